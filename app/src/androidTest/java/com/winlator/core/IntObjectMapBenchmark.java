@@ -0,0 +1,81 @@
+package com.winlator.core;
+
+import static org.junit.Assert.assertEquals;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+public class IntObjectMapBenchmark {
+    private static final int LIVE_PIXMAPS = 4000;
+    private static final int OPERATIONS = 500000;
+    private static final int ROUNDS = 5;
+
+    private static int[] createKeys(int count, int seed) {
+        Random random = new Random(seed);
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) keys[i] = 0x200000 | (random.nextInt(64) << 16) | random.nextInt(0x10000);
+        return keys;
+    }
+
+    private static long runSparseArray(int[] liveKeys, int[] churnKeys, int[] lookups) {
+        SparseArray<Object> map = new SparseArray<>();
+        int[] keys = liveKeys.clone();
+        for (int key : keys) map.put(key, key);
+
+        long checksum = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int index = lookups[i % lookups.length];
+            if ((i & 7) == 0) {
+                map.remove(keys[index]);
+                keys[index] = churnKeys[i % churnKeys.length];
+                map.put(keys[index], keys[index]);
+            }
+            else if (map.get(keys[index]) != null) checksum++;
+        }
+        Log.i("IntObjectMapBenchmark", "SparseArray: "+((System.nanoTime() - startTime) / OPERATIONS)+" ns/op");
+        return checksum + map.size();
+    }
+
+    private static long runIntObjectMap(int[] liveKeys, int[] churnKeys, int[] lookups) {
+        IntObjectMap<Object> map = new IntObjectMap<>();
+        int[] keys = liveKeys.clone();
+        for (int key : keys) map.put(key, key);
+
+        long checksum = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int index = lookups[i % lookups.length];
+            if ((i & 7) == 0) {
+                map.remove(keys[index]);
+                keys[index] = churnKeys[i % churnKeys.length];
+                map.put(keys[index], keys[index]);
+            }
+            else if (map.get(keys[index]) != null) checksum++;
+        }
+        Log.i("IntObjectMapBenchmark", "IntObjectMap: "+((System.nanoTime() - startTime) / OPERATIONS)+" ns/op");
+        return checksum + map.size();
+    }
+
+    @Test
+    public void compareWithSparseArray() {
+        int[] liveKeys = new int[LIVE_PIXMAPS];
+        for (int i = 0; i < LIVE_PIXMAPS; i++) liveKeys[i] = 0x200000 + i;
+        int[] churnKeys = createKeys(LIVE_PIXMAPS, 1);
+        int[] lookups = new int[8192];
+        Random random = new Random(2);
+        for (int i = 0; i < lookups.length; i++) lookups[i] = random.nextInt(LIVE_PIXMAPS);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            assertEquals(runSparseArray(liveKeys, churnKeys, lookups), runIntObjectMap(liveKeys, churnKeys, lookups));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(AndroidJUnit4.class)
+public class AtomTableBenchmark {
+    private static final int THREADS = 8;
+    private static final int ATOMS = 2000;
+    private static final int PASSES = 50;
+    private static final int ROUNDS = 5;
+
+    private static long runBurst(String[] names) throws Exception {
+        AtomTable atomTable = new AtomTable();
+        CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+        AtomicLong checksum = new AtomicLong();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * (ATOMS / THREADS);
+            threads[t] = new Thread(() -> {
+                long sum = 0;
+                try {
+                    barrier.await();
+                    for (int pass = 0; pass < PASSES; pass++) {
+                        for (int i = 0; i < ATOMS; i++) sum += atomTable.internAtom(names[(i + offset) % ATOMS]);
+                    }
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                checksum.addAndGet(sum);
+            });
+            threads[t].start();
+        }
+
+        barrier.await();
+        long startTime = System.nanoTime();
+        for (Thread thread : threads) thread.join();
+        long elapsedTime = System.nanoTime() - startTime;
+
+        long operations = (long)THREADS * ATOMS * PASSES;
+        Log.i("AtomTableBenchmark", "InternAtom burst: "+(elapsedTime / operations)+" ns/op on "+THREADS+" threads");
+        assertEquals(Atom.PREDEFINED.length + ATOMS, atomTable.size());
+        return checksum.get();
+    }
+
+    @Test
+    public void internAtomBurst() throws Exception {
+        String[] names = new String[ATOMS];
+        for (int i = 0; i < ATOMS; i++) names[i] = "_WINE_ATOM_" + i;
+
+        long checksum = runBurst(names);
+        for (int round = 1; round < ROUNDS; round++) assertEquals(checksum, runBurst(names));
+    }
+}
@@ -0,0 +1,136 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.winlator.xconnector.Client;
+import com.winlator.xconnector.ClientSocket;
+import com.winlator.xconnector.XInputStream;
+import com.winlator.xconnector.XOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Counts the objects allocated per request while dispatching through XClientRequestHandler.
+ * QueryPointer, TranslateCoordinates and GetWindowAttributes still allocate (point arrays and
+ * event mask Bitmasks), as do requests carrying a value mask; those are only logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RequestDispatchAllocationTest {
+    private static final int ITERATIONS = 1000;
+    private static final int WARMUP_BATCHES = 3;
+    private XServer xServer;
+    private FakeSocket socket;
+    private FakeClient client;
+    private final XClientRequestHandler requestHandler = new XClientRequestHandler();
+
+    private static class FakeSocket extends ClientSocket {
+        private ByteBuffer data;
+
+        private FakeSocket() {
+            super(-1);
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) {
+            int length = data.remaining();
+            buffer.put(data);
+            return length;
+        }
+    }
+
+    private static class FakeClient extends Client {
+        private final XInputStream inputStream;
+        private final XOutputStream outputStream;
+
+        private FakeClient(FakeSocket socket) {
+            super(null, socket);
+            inputStream = new XInputStream(socket, 65536);
+            outputStream = new XOutputStream(socket, 65536);
+            inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            outputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            outputStream.setOnDeferFlushListener((stream) -> true);
+        }
+
+        @Override
+        public XInputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public XOutputStream getOutputStream() {
+            return outputStream;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        xServer = new XServer(new ScreenInfo(800, 600));
+        socket = new FakeSocket();
+        client = new FakeClient(socket);
+        XClient xClient = new XClient(xServer, client);
+        xClient.setAuthenticated(true);
+        client.setTag(xClient);
+        Debug.startAllocCounting();
+    }
+
+    @After
+    public void tearDown() {
+        Debug.stopAllocCounting();
+    }
+
+    private static ByteBuffer createRequest(byte opcode, int... values) {
+        ByteBuffer request = ByteBuffer.allocate(4 + values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        request.put(opcode).put((byte)0).putShort((short)(1 + values.length));
+        for (int value : values) request.putInt(value);
+        request.flip();
+        return request;
+    }
+
+    private int dispatchBatch(ByteBuffer request) throws Exception {
+        ByteBuffer batch = ByteBuffer.allocate(request.remaining() * ITERATIONS);
+        for (int i = 0; i < ITERATIONS; i++) batch.put(request.duplicate());
+        batch.flip();
+        socket.data = batch;
+        client.getInputStream().readMoreData(false);
+
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < ITERATIONS; i++) {
+            requestHandler.handleRequest(client);
+            client.getOutputStream().buffer.clear();
+        }
+        return Debug.getThreadAllocCount();
+    }
+
+    private int countAllocations(String name, ByteBuffer request) throws Exception {
+        for (int i = 0; i < WARMUP_BATCHES; i++) dispatchBatch(request);
+        int allocations = dispatchBatch(request);
+        Log.i("RequestDispatchAllocationTest", name+": "+allocations+" allocations per "+ITERATIONS+" requests");
+        return allocations;
+    }
+
+    @Test
+    public void replyOnlyRequestsDoNotAllocate() throws Exception {
+        int rootId = xServer.windowManager.rootWindow.id;
+        assertEquals(0, countAllocations("GetInputFocus", createRequest(ClientOpcodes.GET_INPUT_FOCUS)));
+        assertEquals(0, countAllocations("GetGeometry", createRequest(ClientOpcodes.GET_GEOMETRY, rootId)));
+    }
+
+    @Test
+    public void reportRemainingAllocations() throws Exception {
+        int rootId = xServer.windowManager.rootWindow.id;
+        countAllocations("QueryPointer", createRequest(ClientOpcodes.QUERY_POINTER, rootId));
+        countAllocations("TranslateCoordinates", createRequest(ClientOpcodes.TRANSLATE_COORDINATES, rootId, rootId, 0));
+        countAllocations("GetWindowAttributes", createRequest(ClientOpcodes.GET_WINDOW_ATTRIBUTES, rootId));
+    }
+}
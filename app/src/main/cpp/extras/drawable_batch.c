@@ -0,0 +1,116 @@
+#include <jni.h>
+#include <string.h>
+#include <malloc.h>
+#include <stdbool.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <android/log.h>
+
+#define printf(...) __android_log_print(ANDROID_LOG_DEBUG, "System.out", __VA_ARGS__);
+
+static uint8_t *createColorRow(int color, int width) {
+    uint8_t rgba[4];
+    rgba[2] = (color >> 16) & 255;
+    rgba[1] = (color >> 8) & 255;
+    rgba[0] = color & 255;
+    rgba[3] = 255;
+
+    int rowSize = width * 4;
+    uint8_t *row = malloc(rowSize);
+    if (!row) return NULL;
+
+    for (int i = 0; i < rowSize; i += 4) memcpy(row + i, rgba, 4);
+    return row;
+}
+
+static void drawLineRows(uint8_t *dataAddr, int16_t x0, int16_t y0, int16_t x1, int16_t y1, uint8_t *row, int16_t lineWidth, int16_t stride) {
+    int rowSize = lineWidth * 4;
+    int dx =  abs(x1-x0);
+    int dy = -abs(y1-y0);
+    int8_t sx = x0 < x1 ? 1 : -1;
+    int8_t sy = y0 < y1 ? 1 : -1;
+    int e1 = dx + dy, e2;
+
+    while (true) {
+        for (int16_t i = 0; i < lineWidth; i++) {
+            memcpy(dataAddr + (x0 + (i + y0) * stride) * 4, row, rowSize);
+        }
+        if (x0 == x1 && y0 == y1) break;
+
+        e2 = e1 * 2;
+        if (e2 >= dy) {
+            e1 += dy;
+            x0 += sx;
+        }
+        if (e2 <= dx) {
+            e1 += dx;
+            y0 += sy;
+        }
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_com_winlator_xserver_Drawable_batchFillRects(JNIEnv *env, jclass obj, jshortArray rects,
+                                                  jint count, jint color, jshort stride,
+                                                  jobject data) {
+    uint8_t *dataAddr = (*env)->GetDirectBufferAddress(env, data);
+
+    if (!dataAddr) {
+        printf("Error: NULL buffer address in batchFillRects\n");
+        return;
+    }
+
+    jshort *rectsAddr = (*env)->GetPrimitiveArrayCritical(env, rects, NULL);
+    if (!rectsAddr) return;
+
+    int16_t maxWidth = 0;
+    for (int i = 0; i < count; i++) {
+        if (rectsAddr[i * 4 + 2] > maxWidth) maxWidth = rectsAddr[i * 4 + 2];
+    }
+
+    uint8_t *row = maxWidth > 0 ? createColorRow(color, maxWidth) : NULL;
+    if (row) {
+        for (int i = 0; i < count; i++) {
+            int16_t x = rectsAddr[i * 4 + 0];
+            int16_t y = rectsAddr[i * 4 + 1];
+            int16_t width = rectsAddr[i * 4 + 2];
+            int16_t height = rectsAddr[i * 4 + 3];
+            if (width <= 0 || height <= 0) continue;
+
+            for (int16_t j = 0; j < height; j++) {
+                memcpy(dataAddr + (x + (j + y) * stride) * 4, row, width * 4);
+            }
+        }
+        free(row);
+    }
+
+    (*env)->ReleasePrimitiveArrayCritical(env, rects, rectsAddr, JNI_ABORT);
+}
+
+JNIEXPORT void JNICALL
+Java_com_winlator_xserver_Drawable_batchDrawLines(JNIEnv *env, jclass obj, jshortArray points,
+                                                  jint count, jint color, jshort lineWidth,
+                                                  jshort stride, jobject data) {
+    uint8_t *dataAddr = (*env)->GetDirectBufferAddress(env, data);
+
+    if (!dataAddr) {
+        printf("Error: NULL buffer address in batchDrawLines\n");
+        return;
+    }
+
+    uint8_t *row = createColorRow(color, lineWidth);
+    if (!row) {
+        printf("Error: Failed to allocate memory for row\n");
+        return;
+    }
+
+    jshort *pointsAddr = (*env)->GetPrimitiveArrayCritical(env, points, NULL);
+    if (pointsAddr) {
+        for (int i = 1; i < count; i++) {
+            drawLineRows(dataAddr, pointsAddr[i * 2 - 2], pointsAddr[i * 2 - 1], pointsAddr[i * 2], pointsAddr[i * 2 + 1], row, lineWidth, stride);
+        }
+        (*env)->ReleasePrimitiveArrayCritical(env, points, pointsAddr, JNI_ABORT);
+    }
+
+    free(row);
+}
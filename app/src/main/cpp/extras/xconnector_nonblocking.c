@@ -0,0 +1,82 @@
+#include <jni.h>
+#include <sys/epoll.h>
+#include <sys/socket.h>
+#include <errno.h>
+#include <android/log.h>
+
+#define printf(...) __android_log_print(ANDROID_LOG_DEBUG, "System.out", __VA_ARGS__);
+#define MAX_WRITABLE_EVENTS 16
+
+JNIEXPORT jint JNICALL
+Java_com_winlator_xconnector_ClientSocket_send(JNIEnv *env, jobject obj, jint fd, jobject data,
+                                               jint offset, jint length) {
+    char *dataAddr = (*env)->GetDirectBufferAddress(env, data);
+    int size = send(fd, dataAddr + offset, length, MSG_DONTWAIT | MSG_NOSIGNAL);
+    if (size < 0 && (errno == EAGAIN || errno == EWOULDBLOCK)) return 0;
+    return size;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_winlator_xconnector_ClientSocket_sendAncillaryMsgNonBlocking(JNIEnv *env, jobject obj, jint clientFd,
+                                                                      jobject data, jint offset, jint length,
+                                                                      jint ancillaryFd) {
+    char *dataAddr = (*env)->GetDirectBufferAddress(env, data);
+
+    struct iovec iovmsg = {.iov_base = dataAddr + offset, .iov_len = length};
+    struct {
+        struct cmsghdr align;
+        int fds[1];
+    } ctrlmsg;
+
+    struct msghdr msg = {
+        .msg_name = NULL,
+        .msg_namelen = 0,
+        .msg_iov = &iovmsg,
+        .msg_iovlen = 1,
+        .msg_flags = 0,
+        .msg_control = &ctrlmsg,
+        .msg_controllen = sizeof(struct cmsghdr) + sizeof(int)
+    };
+
+    struct cmsghdr *cmsg = CMSG_FIRSTHDR(&msg);
+    cmsg->cmsg_level = SOL_SOCKET;
+    cmsg->cmsg_type = SCM_RIGHTS;
+    cmsg->cmsg_len = msg.msg_controllen;
+    ((int*)CMSG_DATA(cmsg))[0] = ancillaryFd;
+
+    int size = sendmsg(clientFd, &msg, MSG_DONTWAIT | MSG_NOSIGNAL);
+    if (size < 0 && (errno == EAGAIN || errno == EWOULDBLOCK)) return 0;
+    return size;
+}
+
+JNIEXPORT void JNICALL
+Java_com_winlator_xconnector_ClientSocket_shutdown(JNIEnv *env, jobject obj, jint fd) {
+    shutdown(fd, SHUT_RDWR);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_winlator_xconnector_XConnectorEpoll_setEpollOutput(JNIEnv *env, jobject obj,
+                                                            jint writeEpollFd, jint fd,
+                                                            jboolean enabled) {
+    if (!enabled) return epoll_ctl(writeEpollFd, EPOLL_CTL_DEL, fd, NULL) >= 0 || errno == ENOENT;
+
+    struct epoll_event event = {.data.fd = fd, .events = EPOLLOUT};
+    if (epoll_ctl(writeEpollFd, EPOLL_CTL_ADD, fd, &event) >= 0) return JNI_TRUE;
+    return errno == EEXIST;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_winlator_xconnector_XConnectorEpoll_pollWritableFds(JNIEnv *env, jobject obj,
+                                                             jint writeEpollFd, jintArray fds) {
+    struct epoll_event events[MAX_WRITABLE_EVENTS];
+    int maxEvents = (*env)->GetArrayLength(env, fds);
+    if (maxEvents > MAX_WRITABLE_EVENTS) maxEvents = MAX_WRITABLE_EVENTS;
+
+    int numFds = epoll_wait(writeEpollFd, events, maxEvents, 0);
+    if (numFds <= 0) return 0;
+
+    jint result[MAX_WRITABLE_EVENTS];
+    for (int i = 0; i < numFds; i++) result[i] = events[i].data.fd;
+    (*env)->SetIntArrayRegion(env, fds, 0, numFds, result);
+    return numFds;
+}
@@ -0,0 +1,131 @@
+package com.winlator.core;
+
+import java.util.Arrays;
+
+public class IntObjectMap<V> {
+    private static final int MIN_CAPACITY = 8;
+    private int[] slots;
+    private int[] keys;
+    private Object[] values;
+    private int size = 0;
+    private int mask;
+
+    public IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntObjectMap(int initialCapacity) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < initialCapacity) capacity <<= 1;
+        slots = new int[capacity * 2];
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = slots.length - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private int findSlot(int key) {
+        int slot = hash(key) & mask;
+        while (true) {
+            int index = slots[slot];
+            if (index == 0 || keys[index - 1] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return slots[findSlot(key)] != 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int index = slots[findSlot(key)];
+        return index != 0 ? (V)values[index - 1] : null;
+    }
+
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V)values[index];
+    }
+
+    public void put(int key, V value) {
+        int slot = findSlot(key);
+        int index = slots[slot];
+        if (index != 0) {
+            values[index - 1] = value;
+            return;
+        }
+
+        if (size == keys.length) {
+            grow();
+            slot = findSlot(key);
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        slots[slot] = ++size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = findSlot(key);
+        int index = slots[slot];
+        if (index == 0) return null;
+        V value = (V)values[index - 1];
+        deleteSlot(slot);
+
+        int last = --size;
+        if (index - 1 != last) {
+            keys[index - 1] = keys[last];
+            values[index - 1] = values[last];
+            slots[findSlot(keys[last])] = index;
+        }
+        values[last] = null;
+        return value;
+    }
+
+    private void deleteSlot(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (slots[next] != 0) {
+            int home = hash(keys[slots[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[hole] = 0;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        slots = new int[capacity * 2];
+        mask = slots.length - 1;
+        for (int i = 0; i < size; i++) slots[findSlot(keys[i])] = i + 1;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+}
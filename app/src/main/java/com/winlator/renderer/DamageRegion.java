@@ -0,0 +1,81 @@
+package com.winlator.renderer;
+
+import java.util.Arrays;
+
+public class DamageRegion {
+    private int[] rects = new int[8 * 4];
+    private int count = 0;
+    private boolean full = true;
+
+    public synchronized void add(int x, int y, int width, int height, int maxWidth, int maxHeight, int maxRects) {
+        if (full) return;
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + width, maxWidth);
+        int y1 = Math.min(y + height, maxHeight);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        if (maxRects <= 0 || (x0 == 0 && y0 == 0 && x1 == maxWidth && y1 == maxHeight)) {
+            setFull();
+            return;
+        }
+
+        int bestIndex = -1;
+        long bestGrowth = Long.MAX_VALUE;
+        for (int i = 0, offset = 0; i < count; i++, offset += 4) {
+            int rx0 = rects[offset], ry0 = rects[offset + 1], rx1 = rects[offset + 2], ry1 = rects[offset + 3];
+            if (x0 <= rx1 && y0 <= ry1 && x1 >= rx0 && y1 >= ry0) {
+                bestIndex = i;
+                bestGrowth = 0;
+                break;
+            }
+            long growth = (long)(Math.max(x1, rx1) - Math.min(x0, rx0)) * (Math.max(y1, ry1) - Math.min(y0, ry0)) - (long)(rx1 - rx0) * (ry1 - ry0) - (long)(x1 - x0) * (y1 - y0);
+            if (growth < bestGrowth) {
+                bestGrowth = growth;
+                bestIndex = i;
+            }
+        }
+
+        if (bestIndex != -1 && (count >= maxRects || bestGrowth <= 0)) {
+            int offset = bestIndex * 4;
+            rects[offset] = Math.min(rects[offset], x0);
+            rects[offset + 1] = Math.min(rects[offset + 1], y0);
+            rects[offset + 2] = Math.max(rects[offset + 2], x1);
+            rects[offset + 3] = Math.max(rects[offset + 3], y1);
+            return;
+        }
+
+        int offset = count * 4;
+        if (offset == rects.length) rects = Arrays.copyOf(rects, offset * 2);
+        rects[offset] = x0;
+        rects[offset + 1] = y0;
+        rects[offset + 2] = x1;
+        rects[offset + 3] = y1;
+        count++;
+    }
+
+    public synchronized void setFull() {
+        full = true;
+        count = 0;
+    }
+
+    public synchronized void clear() {
+        full = false;
+        count = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return !full && count == 0;
+    }
+
+    public synchronized int drain(int[] out) {
+        if (full || count * 4 > out.length) {
+            clear();
+            return -1;
+        }
+        int drained = count;
+        System.arraycopy(rects, 0, out, 0, drained * 4);
+        count = 0;
+        return drained;
+    }
+}
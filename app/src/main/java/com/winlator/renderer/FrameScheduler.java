@@ -0,0 +1,80 @@
+package com.winlator.renderer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FrameScheduler implements Choreographer.FrameCallback {
+    private static final long FRAME_TIME_TOLERANCE = 2000000;
+    private final Runnable renderRequest;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable postFrameCallback = () -> Choreographer.getInstance().postFrameCallback(this);
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final AtomicLong requestedFrames = new AtomicLong();
+    private final AtomicLong scheduledFrames = new AtomicLong();
+    private final AtomicLong renderedFrames = new AtomicLong();
+    private volatile long minFrameInterval = 0;
+    private long lastFrameTime = 0;
+
+    public FrameScheduler(Runnable renderRequest) {
+        this.renderRequest = renderRequest;
+    }
+
+    public void requestFrame() {
+        requestedFrames.incrementAndGet();
+        if (framePending.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                postFrameCallback.run();
+            }
+            else handler.post(postFrameCallback);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long minFrameInterval = this.minFrameInterval;
+        if (minFrameInterval > 0 && lastFrameTime != 0 && frameTimeNanos - lastFrameTime < minFrameInterval - FRAME_TIME_TOLERANCE) {
+            Choreographer.getInstance().postFrameCallback(this);
+            return;
+        }
+
+        lastFrameTime = frameTimeNanos;
+        framePending.set(false);
+        scheduledFrames.incrementAndGet();
+        renderRequest.run();
+    }
+
+    public void onFrameRendered() {
+        renderedFrames.incrementAndGet();
+    }
+
+    public int getFpsLimit() {
+        long minFrameInterval = this.minFrameInterval;
+        return minFrameInterval > 0 ? Math.round(1e9f / minFrameInterval) : 0;
+    }
+
+    public void setFpsLimit(int fpsLimit) {
+        minFrameInterval = fpsLimit > 0 ? 1000000000L / fpsLimit : 0;
+    }
+
+    public long getRequestedFrames() {
+        return requestedFrames.get();
+    }
+
+    public long getScheduledFrames() {
+        return scheduledFrames.get();
+    }
+
+    public long getRenderedFrames() {
+        return renderedFrames.get();
+    }
+
+    public void resetCounters() {
+        requestedFrames.set(0);
+        scheduledFrames.set(0);
+        renderedFrames.set(0);
+    }
+}
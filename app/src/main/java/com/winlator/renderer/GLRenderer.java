@@ -9,28 +9,38 @@ import android.opengl.GLSurfaceView;
 // import com.winlator.R;
 // import com.winlator.XrActivity;
 import app.gamenative.R;
+import com.winlator.core.IntObjectMap;
 import com.winlator.math.Mathf;
 import com.winlator.math.XForm;
 import com.winlator.renderer.material.CursorMaterial;
 import com.winlator.renderer.material.ShaderMaterial;
 import com.winlator.renderer.material.WindowMaterial;
 import com.winlator.widget.XServerView;
+import com.winlator.xserver.Atom;
 import com.winlator.xserver.Bitmask;
 import com.winlator.xserver.Cursor;
 import com.winlator.xserver.Drawable;
+import com.winlator.xserver.LockProfiler;
 import com.winlator.xserver.Pointer;
+import com.winlator.xserver.Property;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.WindowAttributes;
 import com.winlator.xserver.WindowManager;
 import com.winlator.xserver.XLock;
+import com.winlator.xserver.XResource;
+import com.winlator.xserver.XResourceManager;
 import com.winlator.xserver.XServer;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindowModificationListener, Pointer.OnPointerMotionListener {
+public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindowModificationListener, Pointer.OnPointerMotionListener, XResourceManager.OnResourceLifecycleListener {
+    private static final int WM_CLASS_UNVIEWABLE = 1;
+    private static final int WM_CLASS_FORCE_FULLSCREEN = 2;
     public final XServerView xServerView;
     private final XServer xServer;
     private final VertexAttribute quadVertices = new VertexAttribute("position", 2);
@@ -39,8 +49,12 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     private final CursorMaterial cursorMaterial = new CursorMaterial();
     private final WindowMaterial windowMaterial = new WindowMaterial();
     public final ViewTransformation viewTransformation = new ViewTransformation();
+    public final FrameScheduler frameScheduler;
     private final Drawable rootCursorDrawable;
-    private final ArrayList<RenderableWindow> renderableWindows = new ArrayList<>();
+    private final AtomicReference<RenderScene> scene = new AtomicReference<>(RenderScene.EMPTY);
+    private final Object sceneBuildLock = new Object();
+    private long sceneVersion = 0;
+    private final IntObjectMap<Integer> wmClassFlags = new IntObjectMap<>();
     private String forceFullscreenWMClass = null;
     private boolean fullscreen = false;
     private boolean toggleFullscreen = false;
@@ -57,6 +71,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     public GLRenderer(XServerView xServerView, XServer xServer) {
         this.xServerView = xServerView;
         this.xServer = xServer;
+        this.frameScheduler = new FrameScheduler(xServerView::requestRender);
         rootCursorDrawable = createRootCursorDrawable();
 
         quadVertices.put(new float[]{
@@ -67,6 +82,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         });
 
         xServer.windowManager.addOnWindowModificationListener(this);
+        xServer.windowManager.addOnResourceLifecycleListener(this);
         xServer.pointer.addOnPointerMotionListener(this);
     }
 
@@ -86,7 +102,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
             // iterate all known drawables; if you don't have a central list,
             // call this during updateScene() for each window's content.
-            android.util.SparseArray<Drawable> sa = xServer.drawableManager.all(); // adjust type if needed
+            IntObjectMap<Drawable> sa = xServer.drawableManager.all();
             for (int i = 0; i < sa.size(); i++) {
                 Drawable d = sa.valueAt(i);
                 if (d != null) d.getTexture().invalidate(); // sets textureId=0 so next draw re-creates
@@ -94,7 +110,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
             rootCursorDrawable.getTexture().invalidate();
         }
         updateScene();
-        xServerView.requestRender();
+        frameScheduler.requestFrame();
     }
 
     @Override
@@ -123,6 +139,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         }
 
         drawFrame();
+        frameScheduler.onFrameRendered();
     }
 
     private void drawFrame() {
@@ -180,50 +197,75 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         if (xrFrame) {
             // XrActivity.getInstance().endFrame();
             // XrActivity.updateControllers();
-            xServerView.requestRender();
+            frameScheduler.requestFrame();
         }
     }
 
     @Override
     public void onMapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        updateSubtree(window);
+        frameScheduler.requestFrame();
     }
 
     @Override
     public void onUnmapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        updateSubtree(window);
+        frameScheduler.requestFrame();
     }
 
     @Override
     public void onChangeWindowZOrder(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        updateSubtree(window);
+        frameScheduler.requestFrame();
     }
 
     @Override
     public void onUpdateWindowContent(Window window) {
-        xServerView.requestRender();
+        frameScheduler.requestFrame();
     }
 
     @Override
     public void onUpdateWindowGeometry(final Window window, boolean resized) {
-        if (resized) {
-            xServerView.queueEvent(this::updateScene);
+        updateSubtree(window);
+        frameScheduler.requestFrame();
+    }
+
+    @Override
+    public void onModifyWindowProperty(Window window, Property property) {
+        if (property.name == Atom.WM_CLASS) onChangeWMClass(window);
+    }
+
+    @Override
+    public void onDeleteWindowProperty(Window window, int atom) {
+        if (atom == Atom.WM_CLASS) onChangeWMClass(window);
+    }
+
+    private void onChangeWMClass(Window window) {
+        synchronized (sceneBuildLock) {
+            wmClassFlags.remove(window.id);
+        }
+        if ((unviewableWMClasses != null || forceFullscreenWMClass != null) && isViewable(window)) {
+            updateSubtree(window);
+            frameScheduler.requestFrame();
+        }
+    }
+
+    @Override
+    public void onFreeResource(XResource resource) {
+        if (!(resource instanceof Window)) return;
+        synchronized (sceneBuildLock) {
+            wmClassFlags.remove(resource.id);
         }
-        else xServerView.queueEvent(() -> updateWindowPosition(window));
-        xServerView.requestRender();
     }
 
     @Override
     public void onUpdateWindowAttributes(Window window, Bitmask mask) {
-        if (mask.isSet(WindowAttributes.FLAG_CURSOR)) xServerView.requestRender();
+        if (mask.isSet(WindowAttributes.FLAG_CURSOR)) frameScheduler.requestFrame();
     }
 
     @Override
     public void onPointerMove(short x, short y) {
-        xServerView.requestRender();
+        frameScheduler.requestFrame();
     }
 
     private void renderDrawable(Drawable drawable, int x, int y, ShaderMaterial material) {
@@ -231,26 +273,33 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     }
 
     private void renderDrawable(Drawable drawable, int x, int y, ShaderMaterial material, boolean forceFullscreen) {
-        if (drawable == null) return;
+        if (drawable == null || drawable.getTexture().isDestroyed()) return;
+        long waitStartTime = xServer.lockProfiler.beginWait();
         synchronized (drawable.renderLock) {
-            Texture texture = drawable.getTexture();
-            texture.updateFromDrawable(drawable);
-
-            if (forceFullscreen) {
-                short newHeight = (short)Math.min(xServer.screenInfo.height, ((float)xServer.screenInfo.width / drawable.width) * drawable.height);
-                short newWidth = (short)(((float)newHeight / drawable.height) * drawable.width);
-                XForm.set(tmpXForm1, (xServer.screenInfo.width - newWidth) * 0.5f, (xServer.screenInfo.height - newHeight) * 0.5f, newWidth, newHeight);
-            }
-            else XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
+            xServer.lockProfiler.onAcquired(LockProfiler.RENDER_LOCK, waitStartTime);
+            try {
+                Texture texture = drawable.getTexture();
+                texture.updateFromDrawable(drawable);
+
+                if (forceFullscreen) {
+                    short newHeight = (short)Math.min(xServer.screenInfo.height, ((float)xServer.screenInfo.width / drawable.width) * drawable.height);
+                    short newWidth = (short)(((float)newHeight / drawable.height) * drawable.width);
+                    XForm.set(tmpXForm1, (xServer.screenInfo.width - newWidth) * 0.5f, (xServer.screenInfo.height - newHeight) * 0.5f, newWidth, newHeight);
+                }
+                else XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
 
-            XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
+                XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
-            GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
-            GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+                GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
+                GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
+                GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
+                GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+            }
+            finally {
+                xServer.lockProfiler.onReleased(LockProfiler.RENDER_LOCK);
+            }
         }
     }
 
@@ -259,10 +308,8 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         GLES20.glUniform2f(windowMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
         quadVertices.bind(windowMaterial.programId);
 
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
-            for (RenderableWindow window : renderableWindows) {
-                renderDrawable(window.content, window.rootX, window.rootY, windowMaterial, window.forceFullscreen);
-            }
+        for (RenderableWindow window : scene.get().windows) {
+            renderDrawable(window.content, window.rootX, window.rootY, windowMaterial, window.forceFullscreen);
         }
 
         quadVertices.disable();
@@ -273,24 +320,22 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         GLES20.glUniform2f(cursorMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
         quadVertices.bind(cursorMaterial.programId);
 
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
-            Window pointWindow = xServer.inputDeviceManager.getPointWindow();
-            Cursor cursor = pointWindow != null ? pointWindow.attributes.getCursor() : null;
-            short x = xServer.pointer.getClampedX();
-            short y = xServer.pointer.getClampedY();
+        Window pointWindow = xServer.inputDeviceManager.getPointWindow();
+        Cursor cursor = pointWindow != null ? pointWindow.attributes.getCursor() : null;
+        short x = xServer.pointer.getClampedX();
+        short y = xServer.pointer.getClampedY();
 
-            if (cursor != null) {
-                if (cursor.isVisible()) renderDrawable(cursor.cursorImage, x - cursor.hotSpotX, y - cursor.hotSpotY, cursorMaterial);
-            }
-            else renderDrawable(rootCursorDrawable, x, y, cursorMaterial);
+        if (cursor != null) {
+            if (cursor.isVisible()) renderDrawable(cursor.cursorImage, x - cursor.hotSpotX, y - cursor.hotSpotY, cursorMaterial);
         }
+        else renderDrawable(rootCursorDrawable, x, y, cursorMaterial);
 
         quadVertices.disable();
     }
 
     public void toggleFullscreen() {
         toggleFullscreen = true;
-        xServerView.requestRender();
+        frameScheduler.requestFrame();
     }
 
     private Drawable createRootCursorDrawable() {
@@ -302,26 +347,85 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     }
 
     private void updateScene() {
-        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-            renderableWindows.clear();
-            collectRenderableWindows(xServer.windowManager.rootWindow, xServer.windowManager.rootWindow.getX(), xServer.windowManager.rootWindow.getY());
+        ArrayList<Window> unviewableWindows = new ArrayList<>();
+        try (XLock lock = xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
+            synchronized (sceneBuildLock) {
+                ArrayList<RenderableWindow> renderableWindows = new ArrayList<>();
+                collectRenderableWindows(renderableWindows, unviewableWindows, xServer.windowManager.rootWindow, xServer.windowManager.rootWindow.getX(), xServer.windowManager.rootWindow.getY());
+                publishScene(renderableWindows.toArray(new RenderableWindow[0]));
+            }
+        }
+        disableUnviewableWindows(unviewableWindows);
+    }
+
+    private void updateSubtree(Window window) {
+        if (forceFullscreenWMClass != null || window == xServer.windowManager.rootWindow) {
+            updateScene();
+            return;
+        }
+
+        ArrayList<Window> unviewableWindows = new ArrayList<>();
+        try (XLock lock = xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
+            synchronized (sceneBuildLock) {
+                ArrayList<RenderableWindow> subtreeWindows = new ArrayList<>();
+                if (isViewable(window)) collectRenderableWindows(subtreeWindows, unviewableWindows, window, window.getRootX(), window.getRootY());
+                scene.set(scene.get().replaceSubtree(window, subtreeWindows, ++sceneVersion));
+            }
         }
+        disableUnviewableWindows(unviewableWindows);
     }
 
-    private void collectRenderableWindows(Window window, int x, int y) {
+    private void disableUnviewableWindows(ArrayList<Window> unviewableWindows) {
+        if (unviewableWindows.isEmpty()) return;
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+            for (Window window : unviewableWindows) {
+                if (window.attributes.isEnabled()) window.disableAllDescendants();
+            }
+        }
+    }
+
+    private static boolean isViewable(Window window) {
+        for (; window != null; window = window.getParent()) {
+            if (!window.attributes.isMapped()) return false;
+        }
+        return true;
+    }
+
+    private void publishScene(RenderableWindow[] windows) {
+        scene.set(new RenderScene(windows, ++sceneVersion));
+    }
+
+    public long getSceneVersion() {
+        return scene.get().version;
+    }
+
+    private int getWMClassFlags(Window window) {
+        Integer flags = wmClassFlags.get(window.id);
+        if (flags != null) return flags;
+
+        int newFlags = 0;
+        String wmClass = window.getClassName();
+        if (unviewableWMClasses != null) {
+            for (String unviewableWMClass : unviewableWMClasses) {
+                if (wmClass.contains(unviewableWMClass)) {
+                    newFlags |= WM_CLASS_UNVIEWABLE;
+                    break;
+                }
+            }
+        }
+        if (forceFullscreenWMClass != null && wmClass.contains(forceFullscreenWMClass)) newFlags |= WM_CLASS_FORCE_FULLSCREEN;
+        wmClassFlags.put(window.id, newFlags);
+        return newFlags;
+    }
+
+    private void collectRenderableWindows(ArrayList<RenderableWindow> renderableWindows, ArrayList<Window> unviewableWindows, Window window, int x, int y) {
         if (!window.attributes.isMapped()) return;
         if (window != xServer.windowManager.rootWindow) {
             boolean viewable = true;
 
-            if (unviewableWMClasses != null) {
-                String wmClass = window.getClassName();
-                for (String unviewableWMClass : unviewableWMClasses) {
-                    if (wmClass.contains(unviewableWMClass)) {
-                        if (window.attributes.isEnabled()) window.disableAllDescendants();
-                        viewable = false;
-                        break;
-                    }
-                }
+            if (unviewableWMClasses != null && (getWMClassFlags(window) & WM_CLASS_UNVIEWABLE) != 0) {
+                if (window.attributes.isEnabled()) unviewableWindows.add(window);
+                viewable = false;
             }
 
             if (viewable) {
@@ -332,8 +436,8 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
                     if (width >= 320 && height >= 200 && width < xServer.screenInfo.width && height < xServer.screenInfo.height) {
                         Window parent = window.getParent();
-                        boolean parentHasWMClass = parent.getClassName().contains(forceFullscreenWMClass);
-                        boolean hasWMClass = window.getClassName().contains(forceFullscreenWMClass);
+                        boolean parentHasWMClass = (getWMClassFlags(parent) & WM_CLASS_FORCE_FULLSCREEN) != 0;
+                        boolean hasWMClass = (getWMClassFlags(window) & WM_CLASS_FORCE_FULLSCREEN) != 0;
                         if (hasWMClass) {
                             forceFullscreen = !parentHasWMClass && window.getChildCount() == 0;
                         }
@@ -342,44 +446,34 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
                             short borderY = (short)(parent.getHeight() - height);
                             if (parent.getChildCount() == 1 && borderX > 0 && borderY > 0 && borderX <= 12) {
                                 forceFullscreen = true;
-                                removeRenderableWindow(parent);
+                                removeRenderableWindow(renderableWindows, parent);
                             }
                         }
                     }
 
-                    renderableWindows.add(new RenderableWindow(window.getContent(), x, y, forceFullscreen));
+                    renderableWindows.add(new RenderableWindow(window, x, y, forceFullscreen));
                 }
-                else renderableWindows.add(new RenderableWindow(window.getContent(), x, y));
+                else renderableWindows.add(new RenderableWindow(window, x, y));
             }
         }
 
         for (Window child : window.getChildren()) {
-            collectRenderableWindows(child, child.getX() + x, child.getY() + y);
+            collectRenderableWindows(renderableWindows, unviewableWindows, child, child.getX() + x, child.getY() + y);
         }
     }
 
-    private void removeRenderableWindow(Window window) {
+    private void removeRenderableWindow(ArrayList<RenderableWindow> renderableWindows, Window window) {
         for (int i = 0; i < renderableWindows.size(); i++) {
-            if (renderableWindows.get(i).content == window.getContent()) {
+            if (renderableWindows.get(i).window == window) {
                 renderableWindows.remove(i);
                 break;
             }
         }
     }
 
-    private void updateWindowPosition(Window window) {
-        for (RenderableWindow renderableWindow : renderableWindows) {
-            if (renderableWindow.content == window.getContent()) {
-                renderableWindow.rootX = window.getRootX();
-                renderableWindow.rootY = window.getRootY();
-                break;
-            }
-        }
-    }
-
     public void setCursorVisible(boolean cursorVisible) {
         this.cursorVisible = cursorVisible;
-        xServerView.requestRender();
+        frameScheduler.requestFrame();
     }
 
     public boolean isCursorVisible() {
@@ -392,7 +486,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     public void setScreenOffsetYRelativeToCursor(boolean screenOffsetYRelativeToCursor) {
         this.screenOffsetYRelativeToCursor = screenOffsetYRelativeToCursor;
-        xServerView.requestRender();
+        frameScheduler.requestFrame();
     }
 
     public String getForceFullscreenWMClass() {
@@ -401,6 +495,10 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     public void setForceFullscreenWMClass(String forceFullscreenWMClass) {
         this.forceFullscreenWMClass = forceFullscreenWMClass;
+        synchronized (sceneBuildLock) {
+            wmClassFlags.clear();
+        }
+        updateScene();
     }
 
     public String[] getUnviewableWMClasses() {
@@ -409,6 +507,10 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     public void setUnviewableWMClasses(String... unviewableWMNames) {
         this.unviewableWMClasses = unviewableWMNames;
+        synchronized (sceneBuildLock) {
+            wmClassFlags.clear();
+        }
+        updateScene();
     }
 
     public boolean isFullscreen() {
@@ -421,6 +523,6 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     public void setMagnifierZoom(float magnifierZoom) {
         this.magnifierZoom = magnifierZoom;
-        xServerView.requestRender();
+        frameScheduler.requestFrame();
     }
 }
@@ -60,7 +60,7 @@ public class GPUImage extends Texture {
     @Override
     public void updateFromDrawable(Drawable drawable) {
         if (!isAllocated()) allocateTexture(drawable.width, drawable.height, null);
-        needsUpdate = false;
+        damage.clear();
     }
 
     public short getStride() {
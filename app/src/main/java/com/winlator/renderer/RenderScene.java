@@ -0,0 +1,44 @@
+package com.winlator.renderer;
+
+import com.winlator.xserver.Window;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class RenderScene {
+    static final RenderScene EMPTY = new RenderScene(new RenderableWindow[0], 0);
+    final RenderableWindow[] windows;
+    final long version;
+
+    RenderScene(RenderableWindow[] windows, long version) {
+        this.windows = windows;
+        this.version = version;
+    }
+
+    RenderScene replaceSubtree(Window window, List<RenderableWindow> subtreeWindows, long version) {
+        ArrayList<RenderableWindow> renderableWindows = new ArrayList<>(windows.length + subtreeWindows.size());
+        for (RenderableWindow renderableWindow : windows) {
+            if (renderableWindow.window != window && !window.isAncestorOf(renderableWindow.window)) renderableWindows.add(renderableWindow);
+        }
+
+        if (!subtreeWindows.isEmpty()) renderableWindows.addAll(findInsertIndex(renderableWindows, window), subtreeWindows);
+        return new RenderScene(renderableWindows.toArray(new RenderableWindow[0]), version);
+    }
+
+    static int findInsertIndex(List<RenderableWindow> renderableWindows, Window window) {
+        for (Window current = window, parent; (parent = current.getParent()) != null; current = parent) {
+            List<Window> siblings = parent.getChildren();
+            for (int i = siblings.indexOf(current) - 1; i >= 0; i--) {
+                Window sibling = siblings.get(i);
+                for (int j = renderableWindows.size() - 1; j >= 0; j--) {
+                    Window other = renderableWindows.get(j).window;
+                    if (other == sibling || sibling.isAncestorOf(other)) return j + 1;
+                }
+            }
+            for (int j = renderableWindows.size() - 1; j >= 0; j--) {
+                if (renderableWindows.get(j).window == parent) return j + 1;
+            }
+        }
+        return 0;
+    }
+}
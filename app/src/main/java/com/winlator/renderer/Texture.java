@@ -2,21 +2,32 @@ package com.winlator.renderer;
 
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 
 // import com.winlator.XrActivity;
 import com.winlator.xserver.Drawable;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Texture {
+    private static volatile int maxDamageRects = 8;
+    private static final AtomicLong uploadedBytes = new AtomicLong();
+    private static final AtomicLong savedBytes = new AtomicLong();
+    private static final AtomicLong fullUploads = new AtomicLong();
+    private static final AtomicLong partialUploads = new AtomicLong();
     protected int textureId = 0;
+    private boolean destroyed = false;
     private int wrapS = GLES20.GL_CLAMP_TO_EDGE;
     private int wrapT = GLES20.GL_CLAMP_TO_EDGE;
     private int magFilter = GLES20.GL_LINEAR;
     private int minFilter = GLES20.GL_LINEAR;
     private int format = GLES11Ext.GL_BGRA;
     protected byte unpackAlignment = 4;
-    protected boolean needsUpdate = true;
+    protected final DamageRegion damage = new DamageRegion();
+    private int[] damageRects = new int[0];
+    private ByteBuffer uploadSource;
+    private ByteBuffer uploadData;
 
     protected void generateTextureId() {
         int[] textureIds = new int[1];
@@ -46,7 +57,14 @@ public class Texture {
     }
 
     public void setNeedsUpdate(boolean needsUpdate) {
-        this.needsUpdate = needsUpdate;
+        if (needsUpdate) {
+            damage.setFull();
+        }
+        else damage.clear();
+    }
+
+    public void addDamage(int x, int y, int width, int height, short maxWidth, short maxHeight) {
+        damage.add(x, y, width, height, maxWidth, maxHeight, maxDamageRects);
     }
 
     public void updateFromDrawable(Drawable drawable) {
@@ -54,14 +72,50 @@ public class Texture {
         if (data == null) return;
 
         if (!isAllocated()) {
+            damage.clear();
             allocateTexture(drawable.width, drawable.height, data);
+            return;
         }
-        else if (needsUpdate) {
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+
+        int maxRects = maxDamageRects;
+        if (damageRects.length < maxRects * 4) damageRects = new int[maxRects * 4];
+        int count = damage.drain(damageRects);
+        if (count == 0) return;
+
+        long fullSize = drawable.width * drawable.height * 4L;
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        if (count < 0) {
             GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, drawable.width, drawable.height, format, GLES20.GL_UNSIGNED_BYTE, data);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-            needsUpdate = false;
+            uploadedBytes.addAndGet(fullSize);
+            fullUploads.incrementAndGet();
         }
+        else {
+            if (uploadSource != data) {
+                uploadSource = data;
+                uploadData = data.duplicate();
+            }
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, drawable.width);
+            long size = 0;
+            for (int i = 0, offset = 0; i < count; i++, offset += 4) {
+                int x = damageRects[offset];
+                int y = damageRects[offset + 1];
+                int width = damageRects[offset + 2] - x;
+                int height = damageRects[offset + 3] - y;
+                uploadData.position((y * drawable.width + x) * 4);
+                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, width, height, format, GLES20.GL_UNSIGNED_BYTE, uploadData);
+                size += width * height * 4L;
+            }
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, 0);
+            uploadData.position(0);
+            uploadedBytes.addAndGet(size);
+            savedBytes.addAndGet(Math.max(0, fullSize - size));
+            partialUploads.incrementAndGet();
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
     }
 
     public boolean isAllocated() {
@@ -86,7 +140,38 @@ public class Texture {
 
     public void invalidate() {
         textureId = 0;
-        needsUpdate = true;
+        damage.setFull();
+    }
+
+    public static int getMaxDamageRects() {
+        return maxDamageRects;
+    }
+
+    public static void setMaxDamageRects(int maxDamageRects) {
+        Texture.maxDamageRects = Math.max(0, maxDamageRects);
+    }
+
+    public static long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    public static long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    public static long getFullUploads() {
+        return fullUploads.get();
+    }
+
+    public static long getPartialUploads() {
+        return partialUploads.get();
+    }
+
+    public static void resetUploadStats() {
+        uploadedBytes.set(0);
+        savedBytes.set(0);
+        fullUploads.set(0);
+        partialUploads.set(0);
     }
 
     public void destroy() {
@@ -95,5 +180,6 @@ public class Texture {
             GLES20.glDeleteTextures(textureIds.length, textureIds, 0);
             textureId = 0;
         }
+        destroyed = true;
     }
 }
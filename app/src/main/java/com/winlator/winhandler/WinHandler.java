@@ -509,7 +509,7 @@ public class WinHandler {
                 short y = this.receiveData.getShort();
                 xServer.pointer.setX(x);
                 xServer.pointer.setY(y);
-                xServerView.requestRender();
+                xServerView.getRenderer().frameScheduler.requestFrame();
                 return;
             default:
                 return;
@@ -15,6 +15,9 @@ public class Client {
     protected Thread pollThread;
     protected int shutdownFd;
     protected boolean connected;
+    protected boolean flushPending;
+    protected boolean ready;
+    protected volatile boolean suspended;
 
     public Client(XConnectorEpoll connector, ClientSocket clientSocket) {
         this.connector = connector;
@@ -27,6 +30,15 @@ public class Client {
         outputStream = new XOutputStream(clientSocket, connector.getInitialOutputBufferCapacity());
         inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         outputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+
+        if (connector.isBatchedOutput()) {
+            outputStream.setHighWaterMark(connector.getOutputHighWaterMark());
+            outputStream.setOnDeferFlushListener((stream) -> connector.deferFlush(this));
+        }
+
+        if (connector.isNonBlockingWrites()) {
+            outputStream.setNonBlocking(connector.getMaxOutputBacklog(), (stream, blocked) -> connector.setWriteInterest(this, blocked));
+        }
     }
 
     public XInputStream getInputStream() {
@@ -37,6 +49,14 @@ public class Client {
         return outputStream;
     }
 
+    public boolean suspend() {
+        return connector.suspendClient(this);
+    }
+
+    public void resume() {
+        connector.resumeClient(this);
+    }
+
     public Object getTag() {
         return tag;
     }
@@ -47,9 +67,11 @@ public class Client {
 
     protected void requestShutdown() {
         try {
-            ByteBuffer data = ByteBuffer.allocateDirect(8);
+            ByteBuffer data = DirectBufferPool.acquire(8);
             data.asLongBuffer().put(1);
+            data.limit(8);
             (new ClientSocket(shutdownFd)).write(data);
+            DirectBufferPool.release(data);
         }
         catch (IOException e) {
             Log.e("Client", "Failed to shutdown: " + e);
@@ -12,6 +12,7 @@ public class ClientSocket {
 
     static {
         System.loadLibrary("winlator");
+        System.loadLibrary("extras");
     }
 
     public ClientSocket(int fd) {
@@ -73,6 +74,30 @@ public class ClientSocket {
         else throw new IOException("Failed to send ancillary messages.");
     }
 
+    public int trySend(ByteBuffer data) throws IOException {
+        int position = data.position();
+        int bytesSent = send(fd, data, position, data.remaining());
+        if (bytesSent >= 0) {
+            data.position(position + bytesSent);
+            return bytesSent;
+        }
+        else throw new IOException("Failed to send data.");
+    }
+
+    public int trySendAncillaryMsg(ByteBuffer data, int ancillaryFd) throws IOException {
+        int position = data.position();
+        int bytesSent = sendAncillaryMsgNonBlocking(fd, data, position, data.remaining(), ancillaryFd);
+        if (bytesSent >= 0) {
+            data.position(position + bytesSent);
+            return bytesSent;
+        }
+        else throw new IOException("Failed to send ancillary messages.");
+    }
+
+    public void shutdown() {
+        shutdown(fd);
+    }
+
     private native int read(int fd, ByteBuffer data, int offset, int length);
 
     private native int write(int fd, ByteBuffer data, int length);
@@ -80,4 +105,11 @@ public class ClientSocket {
     private native int recvAncillaryMsg(int clientFd, ByteBuffer data, int offset, int length);
 
     private native int sendAncillaryMsg(int clientFd, ByteBuffer data, int length, int ancillaryFd);
+
+    // send, sendAncillaryMsgNonBlocking and shutdown are implemented in libextras
+    private native int send(int fd, ByteBuffer data, int offset, int length);
+
+    private native int sendAncillaryMsgNonBlocking(int clientFd, ByteBuffer data, int offset, int length, int ancillaryFd);
+
+    private native void shutdown(int fd);
 }
@@ -0,0 +1,152 @@
+package com.winlator.xconnector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+public abstract class DirectBufferPool {
+    private static final int MIN_SIZE_SHIFT = 6;
+    private static final int MAX_SIZE_SHIFT = 24;
+    private static final int THREAD_CACHE_MAX_SHIFT = 16;
+    private static final int THREAD_CACHE_SLOTS = 4;
+    private static final int SIZE_CLASS_COUNT = MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1;
+    private static final byte[] ZERO = new byte[4096];
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<ByteBuffer>[] sharedBuffers = new ArrayDeque[SIZE_CLASS_COUNT];
+    private static final ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(ThreadCache::new);
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong retainedBytes = new AtomicLong();
+    private static volatile long maxRetainedBytes = 64L << 20;
+
+    static {
+        for (int i = 0; i < SIZE_CLASS_COUNT; i++) sharedBuffers[i] = new ArrayDeque<>();
+    }
+
+    private static class ThreadCache {
+        private final ByteBuffer[][] buffers = new ByteBuffer[THREAD_CACHE_MAX_SHIFT - MIN_SIZE_SHIFT + 1][THREAD_CACHE_SLOTS];
+        private final int[] counts = new int[buffers.length];
+    }
+
+    public static ByteBuffer acquire(int capacity) {
+        int sizeClass = sizeClassOf(capacity);
+        if (sizeClass == -1) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        ByteBuffer buffer = null;
+        if (sizeClass < THREAD_CACHE_MAX_SHIFT - MIN_SIZE_SHIFT + 1) {
+            ThreadCache cache = threadCache.get();
+            if (cache.counts[sizeClass] > 0) {
+                int index = --cache.counts[sizeClass];
+                buffer = cache.buffers[sizeClass][index];
+                cache.buffers[sizeClass][index] = null;
+            }
+        }
+
+        if (buffer == null) {
+            ArrayDeque<ByteBuffer> buffers = sharedBuffers[sizeClass];
+            synchronized (buffers) {
+                buffer = buffers.pollLast();
+            }
+        }
+
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SIZE_SHIFT));
+        }
+
+        hits.incrementAndGet();
+        retainedBytes.addAndGet(-buffer.capacity());
+        buffer.clear();
+        return buffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public static ByteBuffer acquireZeroed(int capacity) {
+        ByteBuffer buffer = acquire(capacity);
+        while (buffer.hasRemaining()) buffer.put(ZERO, 0, Math.min(ZERO.length, buffer.remaining()));
+        buffer.clear();
+        return buffer;
+    }
+
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClassOf(capacity);
+        if (sizeClass == -1 || capacity != 1 << (sizeClass + MIN_SIZE_SHIFT)) return;
+
+        if (sizeClass < THREAD_CACHE_MAX_SHIFT - MIN_SIZE_SHIFT + 1) {
+            ThreadCache cache = threadCache.get();
+            if (cache.counts[sizeClass] < THREAD_CACHE_SLOTS) {
+                cache.buffers[sizeClass][cache.counts[sizeClass]++] = buffer;
+                retainedBytes.addAndGet(capacity);
+                return;
+            }
+        }
+
+        releaseShared(buffer, sizeClass);
+    }
+
+    private static void releaseShared(ByteBuffer buffer, int sizeClass) {
+        int capacity = buffer.capacity();
+        if (retainedBytes.get() + capacity > maxRetainedBytes) return;
+        ArrayDeque<ByteBuffer> buffers = sharedBuffers[sizeClass];
+        synchronized (buffers) {
+            buffers.addLast(buffer);
+        }
+        retainedBytes.addAndGet(capacity);
+    }
+
+    public static void trimThreadCache() {
+        ThreadCache cache = threadCache.get();
+        threadCache.remove();
+        for (int sizeClass = 0; sizeClass < cache.counts.length; sizeClass++) {
+            for (int i = 0; i < cache.counts[sizeClass]; i++) {
+                ByteBuffer buffer = cache.buffers[sizeClass][i];
+                retainedBytes.addAndGet(-buffer.capacity());
+                releaseShared(buffer, sizeClass);
+            }
+        }
+    }
+
+    public static void trim() {
+        for (ArrayDeque<ByteBuffer> buffers : sharedBuffers) {
+            synchronized (buffers) {
+                for (ByteBuffer buffer : buffers) retainedBytes.addAndGet(-buffer.capacity());
+                buffers.clear();
+            }
+        }
+    }
+
+    private static int sizeClassOf(int capacity) {
+        if (capacity > 1 << MAX_SIZE_SHIFT) return -1;
+        int shift = capacity <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return Math.max(shift, MIN_SIZE_SHIFT) - MIN_SIZE_SHIFT;
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    public static long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    public static void setMaxRetainedBytes(long maxRetainedBytes) {
+        DirectBufferPool.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    public static String getStats() {
+        return "hits="+hits.get()+" misses="+misses.get()+" retainedBytes="+retainedBytes.get();
+    }
+}
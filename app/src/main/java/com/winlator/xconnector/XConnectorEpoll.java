@@ -5,21 +5,38 @@ import android.util.SparseArray;
 import androidx.annotation.Keep;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class XConnectorEpoll implements Runnable {
     private final ConnectionHandler connectionHandler;
+    private final RequestHandler requestHandler;
     private final int epollFd;
     private Thread epollThread;
-    private final RequestHandler requestHandler;
     private final int serverFd;
     private final int shutdownFd;
-    private boolean running = false;
+    private final int wakeupFd;
+    private final int writeEpollFd;
+    private final int[] writableFds = new int[16];
+    private volatile Runnable wakeupHandler;
+    private volatile boolean running = false;
     private boolean multithreadedClients = false;
     private boolean canReceiveAncillaryMessages = false;
     private boolean monitorClients = true;
+    private boolean batchedOutput = false;
+    private boolean nonBlockingWrites = false;
     private int initialInputBufferCapacity = 128;
     private int initialOutputBufferCapacity = 128;
+    private int outputHighWaterMark = 65536;
+    private int maxOutputBacklog = 32 * 1024 * 1024;
+    private int maxRequestsPerWakeup = 0;
+    private int maxMicrosPerWakeup = 0;
+    private final AtomicLong deferrals = new AtomicLong();
     private final SparseArray<Client> connectedClients = new SparseArray<>();
+    private final ArrayList<Client> pendingFlushClients = new ArrayList<>();
+    private final ArrayList<Client> readyClients = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Client> resumedClients = new ConcurrentLinkedQueue<>();
 
     private native boolean addFdToEpoll(int i, int i2);
 
@@ -37,8 +54,14 @@ public class XConnectorEpoll implements Runnable {
 
     private native boolean waitForSocketRead(int i, int i2);
 
+    // setEpollOutput and pollWritableFds are implemented in libextras
+    private native boolean setEpollOutput(int writeEpollFd, int fd, boolean enabled);
+
+    private native int pollWritableFds(int writeEpollFd, int[] fds);
+
     static {
         System.loadLibrary("winlator");
+        System.loadLibrary("extras");
     }
 
     public XConnectorEpoll(UnixSocketConfig socketConfig, ConnectionHandler connectionHandler, RequestHandler requestHandler) {
@@ -68,6 +91,25 @@ public class XConnectorEpoll implements Runnable {
             closeFd(createEpollFd);
             throw new RuntimeException("Failed to add shutdown fd to epoll.");
         }
+        int wakeupFd = createEventFd();
+        if (wakeupFd < 0 || !addFdToEpoll(createEpollFd, wakeupFd)) {
+            if (wakeupFd >= 0) closeFd(wakeupFd);
+            closeFd(createAFUnixSocket);
+            closeFd(createEventFd);
+            closeFd(createEpollFd);
+            throw new RuntimeException("Failed to add wakeup fd to epoll.");
+        }
+        this.wakeupFd = wakeupFd;
+        int writeEpollFd = createEpollFd();
+        if (writeEpollFd < 0 || !addFdToEpoll(createEpollFd, writeEpollFd)) {
+            if (writeEpollFd >= 0) closeFd(writeEpollFd);
+            closeFd(createAFUnixSocket);
+            closeFd(createEventFd);
+            closeFd(wakeupFd);
+            closeFd(createEpollFd);
+            throw new RuntimeException("Failed to add write epoll fd to epoll.");
+        }
+        this.writeEpollFd = writeEpollFd;
         this.epollThread = new Thread(this);
     }
 
@@ -101,12 +143,16 @@ public class XConnectorEpoll implements Runnable {
             }
         }
         shutdown();
+        DirectBufferPool.trimThreadCache();
     }
 
     @Keep
     private void handleNewConnection(int fd) {
         final Client client = new Client(this, new ClientSocket(fd));
         client.connected = true;
+        synchronized (this.connectedClients) {
+            this.connectedClients.put(fd, client);
+        }
         if (this.multithreadedClients) {
             client.shutdownFd = createEventFd();
             client.pollThread = new Thread(() -> {
@@ -114,45 +160,204 @@ public class XConnectorEpoll implements Runnable {
                 while (client.connected &&                        // stay in loop
                         waitForSocketRead(client.clientSocket.fd,  // until socket readable
                                 client.shutdownFd)) { }  //   or shutdown signalled
+                DirectBufferPool.trimThreadCache();
             });
             client.pollThread.start();
         } else {
             this.connectionHandler.handleNewConnection(client);
         }
-        this.connectedClients.put(fd, client);
     }
 
     @Keep
     private void handleExistingConnection(int fd) {
-        Client client = this.connectedClients.get(fd);
+        handleConnectionEvent(fd);
+        if (!this.multithreadedClients) flushPendingClients();
+    }
+
+    private void handleConnectionEvent(int fd) {
+        if (fd == this.wakeupFd) {
+            handleWakeup();
+            return;
+        }
+        if (fd == this.writeEpollFd) {
+            handleWritableConnections();
+            return;
+        }
+        Client client = getClient(fd);
         if (client == null) {
+            if (fd == this.shutdownFd) {
+                drainEventFd(fd);
+                handleReadyClients();
+            }
             return;
         }
         XInputStream inputStream = client.getInputStream();
         try {
             if (inputStream != null) {
                 if (inputStream.readMoreData(this.canReceiveAncillaryMessages) > 0) {
-                    int activePosition = 0;
-                    while (this.running && this.requestHandler.handleRequest(client)) {
-                        activePosition = inputStream.getActivePosition();
-                    }
-                    inputStream.setActivePosition(activePosition);
+                    handleRequests(client);
                     return;
                 }
                 killConnection(client);
+                inputStream.release();
                 return;
             }
             this.requestHandler.handleRequest(client);
         } catch (IOException e) {
             killConnection(client);
+            if (inputStream != null) inputStream.release();
         }
     }
 
+    private void handleRequests(Client client) throws IOException {
+        XInputStream inputStream = client.getInputStream();
+        boolean budgeted = !this.multithreadedClients;
+        int maxRequests = budgeted ? this.maxRequestsPerWakeup : 0;
+        long deadline = budgeted && this.maxMicrosPerWakeup > 0 ? System.nanoTime() + this.maxMicrosPerWakeup * 1000L : 0;
+        int activePosition = inputStream.getActivePosition();
+        int requestCount = 0;
+
+        while (this.running && !client.suspended && this.requestHandler.handleRequest(client)) {
+            activePosition = inputStream.getActivePosition();
+            requestCount++;
+            if ((maxRequests > 0 && requestCount >= maxRequests) || (deadline != 0 && System.nanoTime() >= deadline)) {
+                if (inputStream.available() > 0 && !client.ready) {
+                    client.ready = true;
+                    if (this.readyClients.isEmpty()) signalEventFd(this.shutdownFd);
+                    this.readyClients.add(client);
+                    this.deferrals.incrementAndGet();
+                }
+                return;
+            }
+        }
+        inputStream.setActivePosition(activePosition);
+    }
+
+    protected boolean suspendClient(Client client) {
+        if (this.multithreadedClients || Thread.currentThread() != this.epollThread) return false;
+        client.suspended = true;
+        return true;
+    }
+
+    protected void resumeClient(Client client) {
+        if (!client.suspended) return;
+        client.suspended = false;
+        if (this.running) {
+            this.resumedClients.add(client);
+            signalEventFd(this.shutdownFd);
+        }
+    }
+
+    private void handleReadyClients() {
+        ArrayList<Client> readyClients = this.readyClients;
+        Client resumedClient;
+        while ((resumedClient = this.resumedClients.poll()) != null) {
+            if (!resumedClient.ready) {
+                resumedClient.ready = true;
+                readyClients.add(resumedClient);
+            }
+        }
+        int readyCount = readyClients.size();
+        if (readyCount == 0) return;
+
+        for (int i = 0; i < readyCount; i++) {
+            Client client = readyClients.get(i);
+            client.ready = false;
+            if (!client.connected) continue;
+            XInputStream inputStream = client.getInputStream();
+            try {
+                handleRequests(client);
+            } catch (IOException e) {
+                killConnection(client);
+                if (inputStream != null) inputStream.release();
+            }
+        }
+
+        readyClients.subList(0, readyCount).clear();
+        if (!readyClients.isEmpty()) signalEventFd(this.shutdownFd);
+    }
+
+    private void handleWritableConnections() {
+        int count = pollWritableFds(this.writeEpollFd, this.writableFds);
+        for (int i = 0; i < count; i++) handleWritableConnection(this.writableFds[i]);
+    }
+
+    private void handleWritableConnection(int fd) {
+        Client client = getClient(fd);
+        if (client == null || client.getOutputStream() == null) {
+            return;
+        }
+        try {
+            client.getOutputStream().flushWritable();
+        } catch (IOException e) {
+            killConnection(client);
+        }
+    }
+
+    protected void setWriteInterest(Client client, boolean enabled) {
+        if (!this.multithreadedClients && client.connected) setEpollOutput(this.writeEpollFd, client.clientSocket.fd, enabled);
+    }
+
+    protected boolean deferFlush(Client client) {
+        if (this.multithreadedClients || Thread.currentThread() != this.epollThread) return false;
+        if (!client.flushPending) {
+            client.flushPending = true;
+            this.pendingFlushClients.add(client);
+        }
+        return true;
+    }
+
+    private void handleWakeup() {
+        drainEventFd(this.wakeupFd);
+        runWakeupHandler();
+    }
+
+    private static void drainEventFd(int eventFd) {
+        ByteBuffer data = DirectBufferPool.acquire(8);
+        try {
+            new ClientSocket(eventFd).read(data);
+        } catch (IOException e) {
+        }
+        DirectBufferPool.release(data);
+    }
+
+    private void runWakeupHandler() {
+        Runnable wakeupHandler = this.wakeupHandler;
+        if (wakeupHandler != null) wakeupHandler.run();
+    }
+
+    private void flushPendingClients() {
+        ArrayList<Client> pendingFlushClients = this.pendingFlushClients;
+        for (int i = 0; i < pendingFlushClients.size(); i++) {
+            Client client = pendingFlushClients.get(i);
+            client.flushPending = false;
+            if (!client.connected) continue;
+            try {
+                client.getOutputStream().flushPending();
+            } catch (IOException e) {
+                killConnection(client);
+            }
+        }
+        pendingFlushClients.clear();
+    }
+
     public Client getClient(int fd) {
-        return this.connectedClients.get(fd);
+        synchronized (this.connectedClients) {
+            return this.connectedClients.get(fd);
+        }
+    }
+
+    public int getConnectedClientCount() {
+        synchronized (this.connectedClients) {
+            return this.connectedClients.size();
+        }
     }
 
     public void killConnection(Client client) {
+        synchronized (this.connectedClients) {
+            if (this.connectedClients.get(client.clientSocket.fd) != client) return;
+            this.connectedClients.remove(client.clientSocket.fd);
+        }
         client.connected = false;
         if (this.multithreadedClients) {
             if (Thread.currentThread() != client.pollThread) {
@@ -169,20 +374,31 @@ public class XConnectorEpoll implements Runnable {
             closeFd(client.shutdownFd);
         } else {
             this.connectionHandler.handleConnectionShutdown(client);
+            removeFdFromEpoll(this.writeEpollFd, client.clientSocket.fd);
             removeFdFromEpoll(this.epollFd, client.clientSocket.fd);
         }
         closeFd(client.clientSocket.fd);
-        this.connectedClients.remove(client.clientSocket.fd);
+        if (client.getOutputStream() != null) client.getOutputStream().release();
     }
 
     private void shutdown() {
-        while (this.connectedClients.size() > 0) {
-            Client client = this.connectedClients.valueAt(this.connectedClients.size() - 1);
+        flushPendingClients();
+        while (true) {
+            Client client;
+            synchronized (this.connectedClients) {
+                if (this.connectedClients.size() == 0) break;
+                client = this.connectedClients.valueAt(this.connectedClients.size() - 1);
+            }
             killConnection(client);
         }
+
         removeFdFromEpoll(this.epollFd, this.serverFd);
         removeFdFromEpoll(this.epollFd, this.shutdownFd);
+        removeFdFromEpoll(this.epollFd, this.wakeupFd);
+        removeFdFromEpoll(this.epollFd, this.writeEpollFd);
         closeFd(this.serverFd);
+        closeFd(this.wakeupFd);
+        closeFd(this.writeEpollFd);
         closeFd(this.shutdownFd);
         closeFd(this.epollFd);
     }
@@ -203,6 +419,55 @@ public class XConnectorEpoll implements Runnable {
         this.initialOutputBufferCapacity = initialOutputBufferCapacity;
     }
 
+    public boolean isBatchedOutput() {
+        return this.batchedOutput;
+    }
+
+    public void setBatchedOutput(boolean batchedOutput) {
+        this.batchedOutput = batchedOutput;
+    }
+
+    public int getOutputHighWaterMark() {
+        return this.outputHighWaterMark;
+    }
+
+    public void setOutputHighWaterMark(int outputHighWaterMark) {
+        this.outputHighWaterMark = outputHighWaterMark;
+    }
+
+    public boolean isNonBlockingWrites() {
+        return this.nonBlockingWrites && !this.multithreadedClients;
+    }
+
+    public void setNonBlockingWrites(boolean nonBlockingWrites) {
+        this.nonBlockingWrites = nonBlockingWrites;
+    }
+
+    public int getMaxOutputBacklog() {
+        return this.maxOutputBacklog;
+    }
+
+    public void setMaxOutputBacklog(int maxOutputBacklog) {
+        this.maxOutputBacklog = maxOutputBacklog;
+    }
+
+    public int getMaxRequestsPerWakeup() {
+        return this.maxRequestsPerWakeup;
+    }
+
+    public int getMaxMicrosPerWakeup() {
+        return this.maxMicrosPerWakeup;
+    }
+
+    public void setRequestBudget(int maxRequestsPerWakeup, int maxMicrosPerWakeup) {
+        this.maxRequestsPerWakeup = Math.max(0, maxRequestsPerWakeup);
+        this.maxMicrosPerWakeup = Math.max(0, maxMicrosPerWakeup);
+    }
+
+    public long getDeferrals() {
+        return this.deferrals.get();
+    }
+
     public void setMultithreadedClients(boolean multithreadedClients) {
         this.multithreadedClients = multithreadedClients;
     }
@@ -211,11 +476,25 @@ public class XConnectorEpoll implements Runnable {
         this.canReceiveAncillaryMessages = canReceiveAncillaryMessages;
     }
 
+    public void setWakeupHandler(Runnable wakeupHandler) {
+        this.wakeupHandler = wakeupHandler;
+    }
+
+    public void wakeup() {
+        if (this.running) signalEventFd(this.wakeupFd);
+    }
+
     private void requestShutdown() {
+        signalEventFd(this.shutdownFd);
+    }
+
+    private static void signalEventFd(int eventFd) {
         try {
-            ByteBuffer data = ByteBuffer.allocateDirect(8);
+            ByteBuffer data = DirectBufferPool.acquire(8);
             data.asLongBuffer().put(1L);
-            new ClientSocket(this.shutdownFd).write(data);
+            data.limit(8);
+            new ClientSocket(eventFd).write(data);
+            DirectBufferPool.release(data);
         } catch (IOException e) {
         }
     }
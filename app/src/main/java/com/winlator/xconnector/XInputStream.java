@@ -7,9 +7,14 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public class XInputStream {
+    private static final int SHRINK_AFTER_READS = 64;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocateDirect(0);
     private ByteBuffer activeBuffer;
     private ByteBuffer buffer;
     public final ClientSocket clientSocket;
+    private final int initialCapacity;
+    private int dataStart = 0;
+    private int smallReadCount = 0;
 
     public XInputStream(int initialCapacity) {
         this(null, initialCapacity);
@@ -17,18 +22,20 @@ public class XInputStream {
 
     public XInputStream(ClientSocket clientSocket, int initialCapacity) {
         this.clientSocket = clientSocket;
-        this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+        this.buffer = DirectBufferPool.acquire(initialCapacity);
+        this.initialCapacity = buffer.capacity();
     }
 
     public int readMoreData(boolean canReceiveAncillaryMessages) throws IOException {
         if (activeBuffer != null) {
-            if (!activeBuffer.hasRemaining()) {
+            dataStart += activeBuffer.position();
+            if (dataStart == buffer.position()) {
                 buffer.clear();
+                dataStart = 0;
+                shrinkInputBufferIfIdle();
             }
-            else if (activeBuffer.position() > 0) {
-                int newLimit = buffer.position();
-                buffer.position(activeBuffer.position()).limit(newLimit);
-                buffer.compact();
+            else if (buffer.capacity() - buffer.position() < buffer.capacity() / 4) {
+                compactInputBuffer();
             }
             activeBuffer = null;
         }
@@ -38,7 +45,9 @@ public class XInputStream {
 
         if (bytesRead > 0) {
             int position = buffer.position();
-            buffer.flip();
+            if (position <= initialCapacity) smallReadCount++;
+            else smallReadCount = 0;
+            buffer.position(dataStart).limit(position);
             activeBuffer = buffer.slice().order(buffer.order());
             buffer.limit(buffer.capacity()).position(position);
         }
@@ -49,15 +58,46 @@ public class XInputStream {
         return clientSocket.getAncillaryFd();
     }
 
+    private void compactInputBuffer() {
+        if (dataStart == 0) return;
+        int position = buffer.position();
+        buffer.position(dataStart).limit(position);
+        buffer.compact();
+        dataStart = 0;
+    }
+
     private void growInputBufferIfNecessary() {
-        if (buffer.position() == buffer.capacity()) {
-            ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() * 2).order(buffer.order());
-            buffer.rewind();
-            newBuffer.put(buffer);
-            buffer = newBuffer;
+        if (buffer.position() < buffer.capacity()) return;
+        if (dataStart > 0) {
+            compactInputBuffer();
+            return;
+        }
+        ByteBuffer newBuffer = DirectBufferPool.acquire(Math.max(buffer.capacity() * 2, initialCapacity)).order(buffer.order());
+        buffer.rewind();
+        newBuffer.put(buffer);
+        DirectBufferPool.release(buffer);
+        buffer = newBuffer;
+        smallReadCount = 0;
+    }
+
+    private void shrinkInputBufferIfIdle() {
+        if (buffer.capacity() > initialCapacity && smallReadCount >= SHRINK_AFTER_READS) {
+            ByteOrder byteOrder = buffer.order();
+            DirectBufferPool.release(buffer);
+            buffer = DirectBufferPool.acquire(initialCapacity).order(byteOrder);
+            smallReadCount = 0;
         }
     }
 
+    public void release() {
+        ByteOrder byteOrder = buffer.order();
+        DirectBufferPool.release(buffer);
+        buffer = EMPTY_BUFFER.duplicate().order(byteOrder);
+        activeBuffer = null;
+        dataStart = 0;
+        smallReadCount = 0;
+    }
+
     public void setByteOrder(ByteOrder byteOrder) {
         buffer.order(byteOrder);
         if (activeBuffer != null) activeBuffer.order(byteOrder);
@@ -9,10 +9,31 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class XOutputStream {
     private static final byte[] ZERO = new byte[64];
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocateDirect(0);
     public ByteBuffer buffer;
     public final ClientSocket clientSocket;
     private final ReentrantLock lock = new ReentrantLock();
+    private final OutputStreamLock streamLock = new OutputStreamLock();
+    private final CoalescingStreamLock coalescingStreamLock = new CoalescingStreamLock();
     private int ancillaryFd = -1;
+    private int highWaterMark = Integer.MAX_VALUE;
+    private OnDeferFlushListener onDeferFlushListener;
+    private boolean nonBlocking = false;
+    private boolean writeBlocked = false;
+    private int maxBacklog = Integer.MAX_VALUE;
+    private OnWriteBlockedListener onWriteBlockedListener;
+    private int coalesceKey;
+    private int coalesceStart = -1;
+    private int coalesceEnd = -1;
+    private long coalescedWrites = 0;
+
+    public interface OnDeferFlushListener {
+        boolean onDeferFlush(XOutputStream outputStream);
+    }
+
+    public interface OnWriteBlockedListener {
+        void onWriteBlocked(XOutputStream outputStream, boolean blocked);
+    }
 
     public XOutputStream(int initialCapacity) {
         this(null, initialCapacity);
@@ -20,17 +41,44 @@ public class XOutputStream {
 
     public XOutputStream(ClientSocket clientSocket, int initialCapacity) {
         this.clientSocket = clientSocket;
-        buffer = ByteBuffer.allocateDirect(initialCapacity);
+        buffer = DirectBufferPool.acquire(initialCapacity);
     }
 
     public void setByteOrder(ByteOrder byteOrder) {
         buffer.order(byteOrder);
     }
 
-    public void setAncillaryFd(int ancillaryFd) {
+    public ByteOrder getByteOrder() {
+        return buffer.order();
+    }
+
+    public void setAncillaryFd(int ancillaryFd) throws IOException {
+        if (this.ancillaryFd != -1) drain();
         this.ancillaryFd = ancillaryFd;
     }
 
+    public void setNonBlocking(int maxBacklog, OnWriteBlockedListener onWriteBlockedListener) {
+        this.nonBlocking = true;
+        this.maxBacklog = maxBacklog;
+        this.onWriteBlockedListener = onWriteBlockedListener;
+    }
+
+    public int getBacklog() {
+        return writeBlocked ? buffer.position() : 0;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public void setHighWaterMark(int highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    public void setOnDeferFlushListener(OnDeferFlushListener onDeferFlushListener) {
+        this.onDeferFlushListener = onDeferFlushListener;
+    }
+
     public void writeByte(byte value) {
         ensureSpaceIsAvailable(1);
         buffer.put(value);
@@ -73,11 +121,24 @@ public class XOutputStream {
         buffer.put(data);
     }
 
+    public void writeEvent(ByteBuffer event, short sequenceNumber) {
+        int start = event.position();
+        int position = buffer.position();
+        write(event);
+        buffer.putShort(position + 2, sequenceNumber);
+        event.position(start);
+    }
+
     public void writePad(int length) {
         write(ZERO, 0, length);
     }
 
     private void flush() throws IOException {
+        if (nonBlocking) {
+            tryFlush();
+            return;
+        }
+
         if (buffer.position() != 0) {
             buffer.flip();
 
@@ -88,22 +149,122 @@ public class XOutputStream {
             else clientSocket.write(buffer);
 
             buffer.clear();
+            coalesceStart = -1;
+        }
+    }
+
+    private void tryFlush() throws IOException {
+        if (buffer.position() == 0) return;
+        if (!writeBlocked) {
+            buffer.flip();
+            if (ancillaryFd != -1) {
+                if (clientSocket.trySendAncillaryMsg(buffer, ancillaryFd) > 0) ancillaryFd = -1;
+            }
+            else clientSocket.trySend(buffer);
+            buffer.compact();
+            coalesceStart = -1;
+            if (buffer.position() > 0) setWriteBlocked(true);
+        }
+
+        if (buffer.position() > maxBacklog) {
+            clientSocket.shutdown();
+            buffer.clear();
+            coalesceStart = -1;
+            ancillaryFd = -1;
+            throw new IOException("Output backlog exceeded "+maxBacklog+" bytes.");
+        }
+    }
+
+    private void setWriteBlocked(boolean writeBlocked) {
+        if (this.writeBlocked == writeBlocked) return;
+        this.writeBlocked = writeBlocked;
+        if (onWriteBlockedListener != null) onWriteBlockedListener.onWriteBlocked(this, writeBlocked);
+    }
+
+    private void drain() throws IOException {
+        boolean nonBlocking = this.nonBlocking;
+        this.nonBlocking = false;
+        try {
+            setWriteBlocked(false);
+            flush();
+        }
+        finally {
+            this.nonBlocking = nonBlocking;
+        }
+    }
+
+    public void flushWritable() throws IOException {
+        lock.lock();
+        try {
+            setWriteBlocked(false);
+            flush();
+        }
+        finally {
+            lock.unlock();
         }
     }
 
+    public void flushPending() throws IOException {
+        lock.lock();
+        try {
+            flush();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canDeferFlush() {
+        return onDeferFlushListener != null && ancillaryFd == -1 && buffer.position() < highWaterMark && onDeferFlushListener.onDeferFlush(this);
+    }
+
     public XStreamLock lock() {
-        return new OutputStreamLock();
+        lock.lock();
+        return streamLock;
+    }
+
+    public XStreamLock lockCoalesced(int coalesceKey) {
+        lock.lock();
+        int position = buffer.position();
+        if (coalesceStart != -1 && this.coalesceKey == coalesceKey && position == coalesceEnd) {
+            buffer.position(coalesceStart);
+            coalescedWrites++;
+        }
+        else {
+            this.coalesceKey = coalesceKey;
+            coalesceStart = position;
+        }
+        return coalescingStreamLock;
+    }
+
+    public long getCoalescedWrites() {
+        return coalescedWrites;
     }
 
     private void ensureSpaceIsAvailable(int length) {
         int position = buffer.position();
         if ((buffer.capacity() - position) >= length) return;
-        ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() + length).order(buffer.order());
-        buffer.rewind();
-        newBuffer.put(buffer).position(position);
+        ByteBuffer newBuffer = DirectBufferPool.acquire(Math.max(buffer.capacity() * 2, position + length)).order(buffer.order());
+        buffer.flip();
+        newBuffer.put(buffer);
+        DirectBufferPool.release(buffer);
         buffer = newBuffer;
     }
 
+    public void release() {
+        lock.lock();
+        try {
+            ByteOrder byteOrder = buffer.order();
+            DirectBufferPool.release(buffer);
+            buffer = EMPTY_BUFFER.duplicate().order(byteOrder);
+            ancillaryFd = -1;
+            coalesceStart = -1;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
     public void writeSuccessReply(int sequenceNumber, int replyLength) throws IOException {
         try (XStreamLock lock = lock()) {
             writeByte((byte) 1);
@@ -115,18 +276,22 @@ public class XOutputStream {
     }
 
     private class OutputStreamLock implements XStreamLock {
-        public OutputStreamLock() {
-            lock.lock();
-        }
-
         @Override
         public void close() throws IOException {
             try {
-                flush();
+                if (!canDeferFlush()) flush();
             }
             finally {
                 lock.unlock();
             }
         }
     }
+
+    private class CoalescingStreamLock implements XStreamLock {
+        @Override
+        public void close() throws IOException {
+            coalesceEnd = buffer.position();
+            streamLock.close();
+        }
+    }
 }
@@ -13,6 +13,7 @@ import com.winlator.xconnector.UnixSocketConfig;
 import com.winlator.xconnector.XConnectorEpoll;
 import com.winlator.xenvironment.EnvironmentComponent;
 import com.winlator.xserver.Drawable;
+import com.winlator.xserver.LockProfiler;
 import com.winlator.xserver.XServer;
 
 import java.io.IOException;
@@ -109,10 +110,17 @@ public class VirGLRendererComponent extends EnvironmentComponent implements Conn
         Drawable drawable = xServer.drawableManager.getDrawable(drawableId);
         if (drawable == null) return;
 
+        long waitStartTime = xServer.lockProfiler.beginWait();
         synchronized (drawable.renderLock) {
-            drawable.setData(null);
-            Texture texture = drawable.getTexture();
-            texture.copyFromFramebuffer(framebuffer, drawable.width, drawable.height);
+            xServer.lockProfiler.onAcquired(LockProfiler.RENDER_LOCK, waitStartTime);
+            try {
+                drawable.setData(null);
+                Texture texture = drawable.getTexture();
+                texture.copyFromFramebuffer(framebuffer, drawable.width, drawable.height);
+            }
+            finally {
+                xServer.lockProfiler.onReleased(LockProfiler.RENDER_LOCK);
+            }
         }
 
         Runnable onDrawListener = drawable.getOnDrawListener();
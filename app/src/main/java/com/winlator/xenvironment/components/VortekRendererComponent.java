@@ -17,6 +17,7 @@ import com.winlator.xconnector.XConnectorEpoll;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xenvironment.EnvironmentComponent;
 import com.winlator.xserver.Drawable;
+import com.winlator.xserver.LockProfiler;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.XServer;
 import java.io.IOException;
@@ -144,8 +145,15 @@ public class VortekRendererComponent extends EnvironmentComponent implements Con
         Window window = this.xServer.windowManager.getWindow(windowId);
         if (window != null) {
             Drawable drawable = window.getContent();
+            long waitStartTime = this.xServer.lockProfiler.beginWait();
             synchronized (drawable.renderLock) {
-                drawable.forceUpdate();
+                this.xServer.lockProfiler.onAcquired(LockProfiler.RENDER_LOCK, waitStartTime);
+                try {
+                    drawable.forceUpdate();
+                }
+                finally {
+                    this.xServer.lockProfiler.onReleased(LockProfiler.RENDER_LOCK);
+                }
             }
         }
     }
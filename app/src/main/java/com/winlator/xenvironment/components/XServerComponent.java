@@ -26,13 +26,19 @@ public class XServerComponent extends EnvironmentComponent {
         connector = new XConnectorEpoll(socketConfig, new XClientConnectionHandler(xServer), new XClientRequestHandler());
         connector.setInitialInputBufferCapacity(262144);
         connector.setCanReceiveAncillaryMessages(true);
+        connector.setBatchedOutput(true);
+        connector.setNonBlockingWrites(true);
+        connector.setRequestBudget(512, 4000);
+        connector.setWakeupHandler(xServer::processQueuedInput);
         connector.start();
+        xServer.setInputWakeup(connector::wakeup);
     }
 
     @Override
     public void stop() {
         Log.d("XServerComponent", "Stopping...");
         if (connector != null) {
+            xServer.setInputWakeup(null);
             connector.stop();
             connector = null;
         }
@@ -0,0 +1,53 @@
+package com.winlator.xserver;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class AtomTable {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names;
+    private volatile int count;
+
+    public AtomTable() {
+        names = Arrays.copyOf(Atom.PREDEFINED, 256);
+        count = Atom.PREDEFINED.length;
+        for (int id = 1; id < count; id++) ids.put(names[id], id);
+    }
+
+    public String getName(int id) {
+        if (id <= 0 || id >= count) return null;
+        return names[id];
+    }
+
+    public int getId(String name) {
+        if (name == null) return 0;
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    public int internAtom(String name) {
+        if (name == null) return 0;
+        Integer id = ids.get(name);
+        return id != null ? id : addAtom(name);
+    }
+
+    private synchronized int addAtom(String name) {
+        Integer existingId = ids.get(name);
+        if (existingId != null) return existingId;
+
+        int id = count;
+        if (id == names.length) names = Arrays.copyOf(names, id * 2);
+        names[id] = name;
+        count = id + 1;
+        ids.put(name, id);
+        return id;
+    }
+
+    public boolean isValid(int id) {
+        return id > 0 && id < count;
+    }
+
+    public int size() {
+        return count;
+    }
+}
@@ -20,6 +20,7 @@ public abstract class ClientOpcodes {
     public static final byte GET_PROPERTY = 20;
     public static final byte SET_SELECTION_OWNER = 22;
     public static final byte GET_SELECTION_OWNER = 23;
+    public static final byte CONVERT_SELECTION = 24;
     public static final byte SEND_EVENT = 25;
     public static final byte GRAB_POINTER = 26;
     public static final byte UNGRAB_POINTER = 27;
@@ -45,8 +45,8 @@ public abstract class DesktopHelper {
     }
 
     private static void setupXResources(XServer xServer) {
-        int atom = Atom.getId("RESOURCE_MANAGER");
-        int type = Atom.getId("STRING");
+        int atom = xServer.atomTable.getId("RESOURCE_MANAGER");
+        int type = Atom.STRING;
 
         ArrayMap<String, String> values = new ArrayMap<>();
         values.put("size", "20");
@@ -6,6 +6,7 @@ import com.winlator.core.Callback;
 import com.winlator.math.Mathf;
 import com.winlator.renderer.GPUImage;
 import com.winlator.renderer.Texture;
+import com.winlator.xconnector.DirectBufferPool;
 import com.winlator.xserver.GraphicsContext;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -34,10 +35,16 @@ public class Drawable extends XResource {
 
     private static native void fillRect(short s, short s2, short s3, short s4, int i, short s5, ByteBuffer byteBuffer);
 
+    // Batch primitives are built from cpp/extras into libextras; the prebuilt libwinlator_11 provides the rest.
+    private static native void batchFillRects(short[] rects, int count, int color, short stride, ByteBuffer byteBuffer);
+
+    private static native void batchDrawLines(short[] points, int count, int color, short lineWidth, short stride, ByteBuffer byteBuffer);
+
     private static native void fromBitmap(Bitmap bitmap, ByteBuffer byteBuffer);
 
     static {
         System.loadLibrary("winlator_11");
+        System.loadLibrary("extras");
     }
 
     public Drawable(int id, int width, int height, Visual visual) {
@@ -107,11 +114,15 @@ public class Drawable extends XResource {
         if (byteBuffer == null) {
             return;
         }
-        if (depth == 1) {
-            drawBitmap(width, height, data, byteBuffer);
-        }
-        else {
-            if (depth == 24 || depth == 32) {
+        synchronized (renderLock) {
+            if (depth == 1) {
+                drawBitmap(width, height, data, byteBuffer);
+                dstX = 0;
+                dstY = 0;
+                width = this.width;
+                height = this.height;
+            }
+            else if (depth == 24 || depth == 32) {
                 dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
                 dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
                 if ((dstX + width) > this.width) width = (short)((this.width - dstX));
@@ -121,16 +132,16 @@ public class Drawable extends XResource {
             }
             this.data.rewind();
             data.rewind();
-            forceUpdate();
+            addDamage(dstX, dstY, width, height);
         }
-        this.data.rewind();
-        data.rewind();
-        forceUpdate();
+        runOnDrawListener();
     }
 
     public ByteBuffer getImage(short x, short y, short width, short height) {
-        ByteBuffer dstData = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        int length = width * height * 4;
         if (this.data == null) {
+            ByteBuffer dstData = DirectBufferPool.acquireZeroed(length).order(ByteOrder.LITTLE_ENDIAN);
+            dstData.limit(length);
             return dstData;
         }
         x = (short)Mathf.clamp(x, 0, this.width-1);
@@ -138,9 +149,13 @@ public class Drawable extends XResource {
         if ((x + width) > this.width) width = (short)(this.width - x);
         if ((y + height) > this.height) height = (short)(this.height - y);
 
-        copyArea(x, y, (short)0, (short)0, width, height, this.getStride(), width, this.data, dstData);
+        ByteBuffer dstData = (width * height * 4 < length ? DirectBufferPool.acquireZeroed(length) : DirectBufferPool.acquire(length)).order(ByteOrder.LITTLE_ENDIAN);
+        dstData.limit(length);
 
-        this.data.rewind();
+        synchronized (renderLock) {
+            copyArea(x, y, (short)0, (short)0, width, height, this.getStride(), width, this.data, dstData);
+            this.data.rewind();
+        }
         dstData.rewind();
         return dstData;
     }
@@ -156,14 +171,17 @@ public class Drawable extends XResource {
             if ((dstX + width) > this.width) width = (short)(this.width - dstX);
             if ((dstY + height) > this.height) height = (short)(this.height - dstY);
 
-            if (gcFunction == GraphicsContext.Function.COPY) {
-                copyArea(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data);
-            }
-            else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data, gcFunction.ordinal());
+            synchronized (renderLock) {
+                if (gcFunction == GraphicsContext.Function.COPY) {
+                    copyArea(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data);
+                }
+                else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data, gcFunction.ordinal());
 
-            this.data.rewind();
-            drawable.data.rewind();
-            forceUpdate();
+                this.data.rewind();
+                drawable.data.rewind();
+                addDamage(dstX, dstY, width, height);
+            }
+            runOnDrawListener();
         }
     }
 
@@ -180,15 +198,71 @@ public class Drawable extends XResource {
         if ((x + width) > this.width) width = (short)((this.width - x));
         if ((y + height) > this.height) height = (short)((this.height - y));
 
-        fillRect((short)x, (short)y, (short)width, (short)height, color, this.getStride(), this.data);
-        this.data.rewind();
-        forceUpdate();
+        synchronized (renderLock) {
+            fillRect((short)x, (short)y, (short)width, (short)height, color, this.getStride(), this.data);
+            this.data.rewind();
+            addDamage(x, y, width, height);
+        }
+        runOnDrawListener();
     }
 
-    public void drawLines(int color, int lineWidth, short... points) {
-        for (int i = 2; i < points.length; i += 2) {
-            drawLine(points[i-2], points[i-1], points[i+0], points[i+1], color, (short)lineWidth);
+    public void fillRects(short[] rects, int count, int color) {
+        if (this.data == null || count == 0) {
+            return;
+        }
+        int left = this.width, top = this.height, right = 0, bottom = 0;
+        for (int i = 0, offset = 0; i < count; i++, offset += 4) {
+            int x = Mathf.clamp(rects[offset], 0, this.width-1);
+            int y = Mathf.clamp(rects[offset+1], 0, this.height-1);
+            int width = rects[offset+2];
+            int height = rects[offset+3];
+            if ((x + width) > this.width) width = this.width - x;
+            if ((y + height) > this.height) height = this.height - y;
+
+            rects[offset] = (short)x;
+            rects[offset+1] = (short)y;
+            rects[offset+2] = (short)width;
+            rects[offset+3] = (short)height;
+            if (width <= 0 || height <= 0) continue;
+
+            left = Math.min(left, x);
+            top = Math.min(top, y);
+            right = Math.max(right, x + width);
+            bottom = Math.max(bottom, y + height);
+        }
+
+        if (left >= right || top >= bottom) return;
+        synchronized (renderLock) {
+            batchFillRects(rects, count, color, this.getStride(), this.data);
+            this.data.rewind();
+            addDamage(left, top, right - left, bottom - top);
         }
+        runOnDrawListener();
+    }
+
+    public void drawLines(int color, int lineWidth, short[] points, int count) {
+        if (this.data == null || count < 2) {
+            return;
+        }
+        int left = this.width, top = this.height, right = 0, bottom = 0;
+        for (int i = 0, offset = 0; i < count; i++, offset += 2) {
+            int x = Mathf.clamp(points[offset], 0, width-lineWidth);
+            int y = Mathf.clamp(points[offset+1], 0, height-lineWidth);
+            points[offset] = (short)x;
+            points[offset+1] = (short)y;
+
+            left = Math.min(left, x);
+            top = Math.min(top, y);
+            right = Math.max(right, x + lineWidth);
+            bottom = Math.max(bottom, y + lineWidth);
+        }
+
+        synchronized (renderLock) {
+            batchDrawLines(points, count, color, (short)lineWidth, this.getStride(), this.data);
+            this.data.rewind();
+            addDamage(left, top, right - left, bottom - top);
+        }
+        runOnDrawListener();
     }
 
     public void drawLine(int x0, int y0, int x1, int y1, int color, int lineWidth) {
@@ -200,10 +274,12 @@ public class Drawable extends XResource {
         x1 = Mathf.clamp(x1, 0, width-lineWidth);
         y1 = Mathf.clamp(y1, 0, height-lineWidth);
 
-        drawLine((short)x0, (short)y0, (short)x1, (short)y1, color, (short)lineWidth, this.getStride(), this.data);
-
-        this.data.rewind();
-        forceUpdate();
+        synchronized (renderLock) {
+            drawLine((short)x0, (short)y0, (short)x1, (short)y1, color, (short)lineWidth, this.getStride(), this.data);
+            this.data.rewind();
+            addDamage(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0) + lineWidth, Math.abs(y1 - y0) + lineWidth);
+        }
+        runOnDrawListener();
     }
 
     public void drawAlphaMaskedBitmap(byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue, Drawable srcDrawable, Drawable maskDrawable) {
@@ -214,9 +290,12 @@ public class Drawable extends XResource {
             if (byteBuffer3 == null) {
                 return;
             }
-            drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, byteBuffer, byteBuffer3, byteBuffer2);
-        this.data.rewind();
-            forceUpdate();
+            synchronized (renderLock) {
+                drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, byteBuffer, byteBuffer3, byteBuffer2);
+                this.data.rewind();
+                addDamage(0, 0, srcDrawable.width, srcDrawable.height);
+            }
+            runOnDrawListener();
         }
     }
 
@@ -230,6 +309,26 @@ public class Drawable extends XResource {
         }
     }
 
+    public void forceUpdate(int x, int y, int width, int height) {
+        synchronized (renderLock) {
+            addDamage(x, y, width, height);
+        }
+        runOnDrawListener();
+    }
+
+    private void addDamage(int x, int y, int width, int height) {
+        if (!this.offscreenStorage) this.texture.addDamage(x, y, width, height, this.width, this.height);
+    }
+
+    private void runOnDrawListener() {
+        if (!this.offscreenStorage) {
+            Runnable runnable = this.onDrawListener;
+            if (runnable != null) {
+                runnable.run();
+            }
+        }
+    }
+
     public boolean isUseSharedData() {
         return this.useSharedData;
     }
@@ -1,8 +1,7 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
 import com.winlator.core.Callback;
+import com.winlator.core.IntObjectMap;
 import com.winlator.renderer.Texture;
 import com.winlator.widget.XServerView;
 import com.winlator.xenvironment.components.VortekRendererComponent;
@@ -11,7 +10,7 @@ import java.util.Objects;
 
 public class DrawableManager extends XResourceManager implements XResourceManager.OnResourceLifecycleListener {
     private final XServer xServer;
-    private final SparseArray<Drawable> drawables = new SparseArray<>();
+    private final IntObjectMap<Drawable> drawables = new IntObjectMap<>();
 
     public DrawableManager(XServer xServer) {
         this.xServer = xServer;
@@ -28,7 +27,7 @@ public class DrawableManager extends XResourceManager implements XResourceManage
 
     public Drawable createDrawable(int id, short width, short height, Visual visual) {
         if (id == 0) return new Drawable(id, width, height, visual);
-        if (drawables.indexOfKey(id) >= 0) return null;
+        if (drawables.containsKey(id)) return null;
         Drawable drawable = new Drawable(id, width, height, visual);
         drawables.put(id, drawable);
         return drawable;
@@ -61,7 +60,7 @@ public class DrawableManager extends XResourceManager implements XResourceManage
         return xServer.pixmapManager.visual;
     }
 
-    public SparseArray<Drawable> all(){
+    public IntObjectMap<Drawable> all() {
         return drawables;
     }
 }
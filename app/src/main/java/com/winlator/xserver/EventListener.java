@@ -7,6 +7,8 @@ import java.io.IOException;
 public class EventListener {
     public final XClient client;
     public final Bitmask eventMask;
+    private int motionHintGeneration = -1;
+    private int clientMotionHintGeneration = -1;
 
     public EventListener(XClient client, Bitmask eventMask) {
         this.client = client;
@@ -21,9 +23,17 @@ public class EventListener {
         return this.eventMask.intersects(mask);
     }
 
+    public void sendMotionHint(Event hintEvent, int motionHintGeneration) {
+        int clientMotionHintGeneration = client.getMotionHintGeneration();
+        if (this.motionHintGeneration == motionHintGeneration && this.clientMotionHintGeneration == clientMotionHintGeneration) return;
+        this.motionHintGeneration = motionHintGeneration;
+        this.clientMotionHintGeneration = clientMotionHintGeneration;
+        sendEvent(hintEvent);
+    }
+
     public void sendEvent(Event event) {
         try {
-            event.send(client.getSequenceNumber(), client.getOutputStream());
+            event.sendEncoded(client.getSequenceNumber(), client.getOutputStream());
         }
         catch (IOException e) {
             e.printStackTrace();
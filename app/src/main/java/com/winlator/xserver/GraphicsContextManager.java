@@ -1,18 +1,18 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
+import com.winlator.core.IntObjectMap;
 import com.winlator.xconnector.XInputStream;
 
 public class GraphicsContextManager extends XResourceManager {
-    private final SparseArray<GraphicsContext> graphicsContexts = new SparseArray<>();
+    private static final GraphicsContext.Function[] FUNCTIONS = GraphicsContext.Function.values();
+    private final IntObjectMap<GraphicsContext> graphicsContexts = new IntObjectMap<>();
 
     public GraphicsContext getGraphicsContext(int id) {
         return graphicsContexts.get(id);
     }
 
     public GraphicsContext createGraphicsContext(int id, Drawable drawable) {
-        if (graphicsContexts.indexOfKey(id) >= 0) return null;
+        if (graphicsContexts.containsKey(id)) return null;
         GraphicsContext graphicsContext = new GraphicsContext(id, drawable);
         graphicsContexts.put(id, graphicsContext);
         triggerOnCreateResourceListener(graphicsContext);
@@ -25,10 +25,11 @@ public class GraphicsContextManager extends XResourceManager {
     }
 
     public void updateGraphicsContext(GraphicsContext graphicsContext, Bitmask valueMask, XInputStream inputStream) {
-        for (int index : valueMask) {
+        for (int bits = valueMask.getBits(); bits != 0; bits &= bits - 1) {
+            int index = Integer.lowestOneBit(bits);
             switch (index) {
                 case GraphicsContext.FLAG_FUNCTION:
-                    graphicsContext.setFunction(GraphicsContext.Function.values()[inputStream.readInt()]);
+                    graphicsContext.setFunction(FUNCTIONS[inputStream.readInt()]);
                     break;
                 case GraphicsContext.FLAG_PLANE_MASK:
                     graphicsContext.setPlaneMask(inputStream.readInt());
@@ -16,6 +16,7 @@ import com.winlator.xserver.events.PointerWindowEvent;
 public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyboard.OnKeyboardListener, WindowManager.OnWindowModificationListener, XResourceManager.OnResourceLifecycleListener {
     private static final byte MOUSE_WHEEL_DELTA = 120;
     private Window pointWindow;
+    private volatile int motionHintGeneration = 0;
     private final XServer xServer;
 
     public InputDeviceManager(XServer xServer) {
@@ -59,7 +60,13 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
     private void updatePointWindow() {
         Window pointWindow = xServer.windowManager.findPointWindow(xServer.pointer.getClampedX(), xServer.pointer.getClampedY());
-        this.pointWindow = pointWindow != null ? pointWindow : xServer.windowManager.rootWindow;
+        if (pointWindow == null) pointWindow = xServer.windowManager.rootWindow;
+        if (pointWindow != this.pointWindow) clearMotionHint();
+        this.pointWindow = pointWindow;
+    }
+
+    public void clearMotionHint() {
+        motionHintGeneration++;
     }
 
     public Window getPointWindow() {
@@ -98,6 +105,27 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
         }
     }
 
+    private void sendMotionNotify(Window window, Bitmask eventMask, MotionNotify motionNotify, MotionNotify hintNotify) {
+        Window grabWindow = xServer.grabManager.getWindow();
+        if (grabWindow != null && grabWindow.attributes.isEnabled()) {
+            EventListener eventListener = xServer.grabManager.getEventListener();
+            if (xServer.grabManager.isOwnerEvents() && window != null) {
+                window.sendMotionEvent(eventMask, motionNotify, hintNotify, eventListener.client, motionHintGeneration);
+            }
+            else if (eventListener.isInterestedIn(eventMask)) {
+                if (!eventListener.isInterestedIn(Event.POINTER_MOTION_HINT)) {
+                    eventListener.sendEvent(motionNotify);
+                }
+                else if (hintNotify != null) {
+                    eventListener.sendMotionHint(hintNotify, motionHintGeneration);
+                }
+            }
+        }
+        else if (window != null && window.attributes.isEnabled()) {
+            window.sendMotionEvent(eventMask, motionNotify, hintNotify, null, motionHintGeneration);
+        }
+    }
+
     public void sendEnterLeaveNotify(Window windowA, Window windowB, PointerWindowEvent.Mode mode) {
         if (windowA == windowB) return;
         short x = xServer.pointer.getX();
@@ -126,6 +154,7 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
     @Override
     public void onPointerButtonPress(Pointer.Button button) {
+        clearMotionHint();
         if (xServer.isRelativeMouseMovement()) {
             WinHandler winHandler = xServer.getWinHandler();
             int wheelDelta = button == Pointer.Button.BUTTON_SCROLL_UP ? MOUSE_WHEEL_DELTA : (button == Pointer.Button.BUTTON_SCROLL_DOWN ? -MOUSE_WHEEL_DELTA : 0);
@@ -154,6 +183,7 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
     @Override
     public void onPointerButtonRelease(Pointer.Button button) {
+        clearMotionHint();
         if (xServer.isRelativeMouseMovement()) {
             WinHandler winHandler = xServer.getWinHandler();
             winHandler.mouseEvent(MouseEventFlags.getFlagFor(button, false), 0, 0, 0);
@@ -193,7 +223,13 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
             short[] localPoint = eventWindow.rootPointToLocal(x, y);
 
             Window child = eventWindow.isAncestorOf(pointWindow) ? pointWindow : null;
-            sendEvent(window, eventMask, new MotionNotify(false, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], getKeyButMask()));
+            Bitmask keyButMask = getKeyButMask();
+            MotionNotify motionNotify = new MotionNotify(false, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], keyButMask);
+            MotionNotify hintNotify = null;
+            if (wantsMotionHint(window, grabWindow)) {
+                hintNotify = new MotionNotify(true, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], keyButMask);
+            }
+            sendMotionNotify(window, eventMask, motionNotify, hintNotify);
         }
     }
 
@@ -256,6 +292,11 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
         eventWindow.sendEvent(Event.KEY_RELEASE, new KeyRelease(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], keyButMask));
     }
 
+    private boolean wantsMotionHint(Window window, Window grabWindow) {
+        if (grabWindow != null && window == null) return xServer.grabManager.getEventListener().isInterestedIn(Event.POINTER_MOTION_HINT);
+        return window != null && window.hasEventListenerFor(Event.POINTER_MOTION_HINT);
+    }
+
     private Bitmask createPointerEventMask() {
         Bitmask eventMask = new Bitmask();
         eventMask.set(Event.POINTER_MOTION);
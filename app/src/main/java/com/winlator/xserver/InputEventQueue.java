@@ -0,0 +1,100 @@
+package com.winlator.xserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class InputEventQueue {
+    public static final byte POINTER_MOVE = 1;
+    public static final byte POINTER_MOVE_DELTA = 2;
+    public static final byte POINTER_BUTTON_PRESS = 3;
+    public static final byte POINTER_BUTTON_RELEASE = 4;
+    public static final byte KEY_PRESS = 5;
+    public static final byte KEY_RELEASE = 6;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final byte[] types;
+    private final int[] params1;
+    private final int[] params2;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    private long coalescedEvents = 0;
+
+    public interface Handler {
+        void handleInputEvent(byte type, int param1, int param2);
+    }
+
+    public InputEventQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        types = new byte[size];
+        params1 = new int[size];
+        params2 = new int[size];
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    public boolean offer(byte type, int param1, int param2) {
+        while (true) {
+            long position = tail.get();
+            int index = (int)(position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    types[index] = type;
+                    params1[index] = param1;
+                    params2[index] = param2;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            }
+            else if (sequence < position) return false;
+        }
+    }
+
+    public boolean isEmpty() {
+        return sequences.get((int)(head & mask)) != head + 1;
+    }
+
+    public int drain(Handler handler) {
+        int count = 0;
+        while (!isEmpty()) {
+            int index = (int)(head & mask);
+            byte type = types[index];
+            int param1 = params1[index];
+            int param2 = params2[index];
+            release(index);
+            count++;
+
+            while ((type == POINTER_MOVE || type == POINTER_MOVE_DELTA) && !isEmpty()) {
+                index = (int)(head & mask);
+                if (types[index] != type) break;
+                if (type == POINTER_MOVE) {
+                    param1 = params1[index];
+                    param2 = params2[index];
+                }
+                else {
+                    param1 += params1[index];
+                    param2 += params2[index];
+                }
+                release(index);
+                count++;
+                coalescedEvents++;
+            }
+
+            handler.handleInputEvent(type, param1, param2);
+        }
+        return count;
+    }
+
+    private void release(int index) {
+        sequences.set(index, head + capacity);
+        head++;
+    }
+
+    public long getCoalescedEvents() {
+        return coalescedEvents;
+    }
+}
@@ -0,0 +1,153 @@
+package com.winlator.xserver;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LockProfiler {
+    public static final int RENDER_LOCK = XServer.Lockable.values().length;
+    private static final int LOCK_COUNT = RENDER_LOCK + 1;
+    private static final long[] BUCKET_LIMITS = {1000, 10000, 100000, 1000000, 10000000, 100000000};
+    private static final String[] BUCKET_NAMES = {"<1us", "<10us", "<100us", "<1ms", "<10ms", "<100ms", ">=100ms"};
+    private static final int BUCKET_COUNT = BUCKET_LIMITS.length + 1;
+    private static final int MAX_VIOLATIONS = 32;
+    private final AtomicLongArray acquisitions = new AtomicLongArray(LOCK_COUNT);
+    private final AtomicLongArray totalWaitTime = new AtomicLongArray(LOCK_COUNT);
+    private final AtomicLongArray totalHoldTime = new AtomicLongArray(LOCK_COUNT);
+    private final AtomicLongArray waitHistogram = new AtomicLongArray(LOCK_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray holdHistogram = new AtomicLongArray(LOCK_COUNT * BUCKET_COUNT);
+    private final long[] maxWaitTime = new long[LOCK_COUNT];
+    private final String[] maxWaitSite = new String[LOCK_COUNT];
+    private final AtomicIntegerArray orderEdges = new AtomicIntegerArray(LOCK_COUNT * LOCK_COUNT);
+    private final ArrayList<String> violations = new ArrayList<>();
+    private final ThreadLocal<HeldLocks> heldLocks = ThreadLocal.withInitial(HeldLocks::new);
+    private volatile boolean enabled = false;
+
+    private static class HeldLocks {
+        private final int[] depth = new int[LOCK_COUNT];
+        private final long[] acquiredTime = new long[LOCK_COUNT];
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long beginWait() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void onAcquired(int lockIndex, long waitStartTime) {
+        if (!enabled || waitStartTime == 0) return;
+        long now = System.nanoTime();
+        long waitTime = now - waitStartTime;
+        HeldLocks held = heldLocks.get();
+
+        if (held.depth[lockIndex]++ > 0) return;
+        held.acquiredTime[lockIndex] = now;
+
+        acquisitions.incrementAndGet(lockIndex);
+        totalWaitTime.addAndGet(lockIndex, waitTime);
+        waitHistogram.incrementAndGet(lockIndex * BUCKET_COUNT + bucketOf(waitTime));
+        if (waitTime > maxWaitTime[lockIndex]) recordMaxWait(lockIndex, waitTime);
+
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            if (i == lockIndex || held.depth[i] == 0) continue;
+            if (orderEdges.getAndIncrement(i * LOCK_COUNT + lockIndex) == 0 && orderEdges.get(lockIndex * LOCK_COUNT + i) > 0) {
+                recordViolation(i, lockIndex);
+            }
+        }
+    }
+
+    public void onReleased(int lockIndex) {
+        if (!enabled) return;
+        HeldLocks held = heldLocks.get();
+        if (held.depth[lockIndex] == 0 || --held.depth[lockIndex] > 0) return;
+
+        long holdTime = System.nanoTime() - held.acquiredTime[lockIndex];
+        totalHoldTime.addAndGet(lockIndex, holdTime);
+        holdHistogram.incrementAndGet(lockIndex * BUCKET_COUNT + bucketOf(holdTime));
+    }
+
+    private synchronized void recordMaxWait(int lockIndex, long waitTime) {
+        if (waitTime <= maxWaitTime[lockIndex]) return;
+        maxWaitTime[lockIndex] = waitTime;
+        maxWaitSite[lockIndex] = Thread.currentThread().getName()+" at "+findCallSite();
+    }
+
+    private synchronized void recordViolation(int heldIndex, int lockIndex) {
+        if (violations.size() >= MAX_VIOLATIONS) return;
+        violations.add(nameOf(lockIndex)+" acquired while holding "+nameOf(heldIndex)+" (reverse order seen before) on "+Thread.currentThread().getName()+" at "+findCallSite());
+    }
+
+    private static String findCallSite() {
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            String className = element.getClassName();
+            if (className.startsWith("java.") || className.startsWith("dalvik.") || className.equals(LockProfiler.class.getName()) || className.startsWith(XServer.class.getName())) continue;
+            return element.toString();
+        }
+        return "unknown";
+    }
+
+    private static int bucketOf(long time) {
+        for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+            if (time < BUCKET_LIMITS[i]) return i;
+        }
+        return BUCKET_LIMITS.length;
+    }
+
+    private static String nameOf(int lockIndex) {
+        return lockIndex == RENDER_LOCK ? "RENDER_LOCK" : XServer.Lockable.values()[lockIndex].name();
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            acquisitions.set(i, 0);
+            totalWaitTime.set(i, 0);
+            totalHoldTime.set(i, 0);
+            maxWaitTime[i] = 0;
+            maxWaitSite[i] = null;
+        }
+        for (int i = 0; i < LOCK_COUNT * BUCKET_COUNT; i++) {
+            waitHistogram.set(i, 0);
+            holdHistogram.set(i, 0);
+        }
+        for (int i = 0; i < LOCK_COUNT * LOCK_COUNT; i++) orderEdges.set(i, 0);
+        violations.clear();
+    }
+
+    public synchronized ArrayList<String> getViolations() {
+        return new ArrayList<>(violations);
+    }
+
+    public synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            long count = acquisitions.get(i);
+            if (count == 0) continue;
+            sb.append(String.format(Locale.ENGLISH, "%s: acquisitions=%d wait=%.3fms hold=%.3fms maxWait=%.3fms\n",
+                nameOf(i), count, totalWaitTime.get(i) / 1e6f, totalHoldTime.get(i) / 1e6f, maxWaitTime[i] / 1e6f));
+            if (maxWaitSite[i] != null) sb.append("  longest wait: ").append(maxWaitSite[i]).append('\n');
+            appendHistogram(sb, "  wait:", waitHistogram, i);
+            appendHistogram(sb, "  hold:", holdHistogram, i);
+        }
+
+        if (!violations.isEmpty()) {
+            sb.append("lock order violations:\n");
+            for (String violation : violations) sb.append("  ").append(violation).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb, String label, AtomicLongArray histogram, int lockIndex) {
+        sb.append(label);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            sb.append(' ').append(BUCKET_NAMES[i]).append('=').append(histogram.get(lockIndex * BUCKET_COUNT + i));
+        }
+        sb.append('\n');
+    }
+}
@@ -2,12 +2,14 @@ package com.winlator.xserver;
 
 import androidx.annotation.NonNull;
 
-import com.winlator.core.ArrayUtils;
 import com.winlator.core.StringUtils;
+import com.winlator.xconnector.XOutputStream;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class Property {
     public enum Mode {REPLACE, PREPEND, APPEND}
@@ -31,69 +33,114 @@ public class Property {
     public final int name;
     public final int type;
     public final Format format;
-    public ByteBuffer data;
+    private byte[] buffer;
+    private ByteBuffer data;
+    private int start;
+    private int size;
+    private final AtomTable atomTable;
 
-    public Property(int name, int type, Format format, byte[] data) {
+    public Property(int name, int type, Format format, byte[] data, AtomTable atomTable) {
         this.name = name;
         this.type = type;
         this.format = format;
+        this.atomTable = atomTable;
         replace(data);
     }
 
     public void replace(byte[] data) {
-        this.data = ByteBuffer.wrap(data != null ? data : new byte[0]).order(ByteOrder.LITTLE_ENDIAN);
+        setBuffer(data != null ? data : new byte[0], 0);
+        size = buffer.length;
     }
 
     public void prepend(byte[] values) {
-        replace(ArrayUtils.concat(values, this.data.array()));
+        if (values == null || values.length == 0) return;
+        if (start < values.length) {
+            int headroom = Math.max(values.length, size);
+            byte[] newBuffer = new byte[headroom + size + (buffer.length - start - size)];
+            System.arraycopy(buffer, start, newBuffer, headroom, size);
+            setBuffer(newBuffer, headroom);
+        }
+        start -= values.length;
+        size += values.length;
+        System.arraycopy(values, 0, buffer, start, values.length);
     }
 
     public void append(byte[] values) {
-        replace(ArrayUtils.concat(this.data.array(), values));
+        if (values == null || values.length == 0) return;
+        int end = start + size;
+        if (end + values.length > buffer.length) {
+            byte[] newBuffer = new byte[start + Math.max(size + values.length, size * 2)];
+            System.arraycopy(buffer, start, newBuffer, start, size);
+            setBuffer(newBuffer, start);
+        }
+        System.arraycopy(values, 0, buffer, end, values.length);
+        size += values.length;
+    }
+
+    private void setBuffer(byte[] buffer, int start) {
+        this.buffer = buffer;
+        this.start = start;
+        data = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return start == 0 && size == buffer.length ? buffer : Arrays.copyOfRange(buffer, start, start + size);
+    }
+
+    public void write(XOutputStream outputStream, int offset, int length) throws IOException {
+        outputStream.write(buffer, start + offset, length);
     }
 
     @NonNull
     @Override
     public String toString() {
-        String type = Atom.getName(this.type);
-        data.rewind();
+        String type = String.valueOf(atomTable.getName(this.type));
         switch (type) {
             case "UTF8_STRING":
-                return StringUtils.fromANSIString(data.array(), StandardCharsets.UTF_8);
+                return StringUtils.fromANSIString(toByteArray(), StandardCharsets.UTF_8);
             case "STRING":
-                return StringUtils.fromANSIString(data.array(), XServer.LATIN1_CHARSET);
+                return StringUtils.fromANSIString(toByteArray(), XServer.LATIN1_CHARSET);
             case "ATOM":
-                return Atom.getName(data.getInt(0));
+                return String.valueOf(atomTable.getName(getInt(0)));
             default:
                 StringBuilder sb = new StringBuilder();
-                for (int i = 0, size = data.capacity() / (format.value >> 3); i < size; i++) {
+                int unitSize = format.value >> 3;
+                for (int i = 0, count = size / unitSize; i < count; i++) {
                     if (i > 0) sb.append(",");
+                    int position = start + i * unitSize;
                     switch (format) {
                         case BYTE_ARRAY:
-                            sb.append(data.get());
+                            sb.append(data.get(position));
                             break;
                         case SHORT_ARRAY:
-                            sb.append(data.getShort());
+                            sb.append(data.getShort(position));
                             break;
                         case INT_ARRAY:
-                            sb.append(data.getInt());
+                            sb.append(data.getInt(position));
                             break;
                     }
                 }
-                data.rewind();
                 return sb.toString();
         }
     }
 
+    public byte getByte(int index) {
+        return data.get(start + index);
+    }
+
     public int getInt(int index) {
-        return data.getInt(index * 4);
+        return data.getInt(start + index * 4);
     }
 
     public long getLong(int index) {
-        return data.getLong(index * 8);
+        return data.getLong(start + index * 8);
     }
 
     public String nameAsString() {
-        return Atom.getName(name);
+        return atomTable.getName(name);
     }
 }
@@ -0,0 +1,81 @@
+package com.winlator.xserver;
+
+import com.winlator.xconnector.XInputStream;
+import com.winlator.xconnector.XOutputStream;
+import com.winlator.xserver.errors.XRequestError;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RequestDescriptor {
+    public static final int FLAG_READ_ONLY = 1;
+    public static final int FLAG_REPLY = 1<<1;
+    public static final int FLAG_WRITES_IF_REQUEST_DATA = 1<<2;
+    public final String name;
+    public final byte majorOpcode;
+    public final byte minorOpcode;
+    public final int lockMask;
+    public final int flags;
+    public final Handler handler;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final LongAdder lockWaitTime = new LongAdder();
+
+    public interface Handler {
+        void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError;
+    }
+
+    public RequestDescriptor(String name, byte opcode, int lockMask, int flags, Handler handler) {
+        this(name, opcode, (byte)0, lockMask, flags, handler);
+    }
+
+    public RequestDescriptor(String name, byte majorOpcode, byte minorOpcode, int lockMask, int flags, Handler handler) {
+        this.name = name;
+        this.majorOpcode = majorOpcode;
+        this.minorOpcode = minorOpcode;
+        this.lockMask = lockMask;
+        this.flags = flags;
+        this.handler = handler;
+    }
+
+    public boolean isExtensionRequest() {
+        return majorOpcode < 0;
+    }
+
+    public boolean isReadOnly() {
+        return (flags & FLAG_READ_ONLY) != 0;
+    }
+
+    public boolean isReadOnly(XClient client) {
+        if ((flags & FLAG_READ_ONLY) == 0) return false;
+        return (flags & FLAG_WRITES_IF_REQUEST_DATA) == 0 || client.getRequestData() == 0;
+    }
+
+    public boolean hasReply() {
+        return (flags & FLAG_REPLY) != 0;
+    }
+
+    protected void record(long time, long lockWaitTime) {
+        count.increment();
+        totalTime.add(time);
+        this.lockWaitTime.add(lockWaitTime);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    public long getLockWaitTime() {
+        return lockWaitTime.sum();
+    }
+
+    public void resetStats() {
+        count.reset();
+        totalTime.reset();
+        lockWaitTime.reset();
+    }
+}
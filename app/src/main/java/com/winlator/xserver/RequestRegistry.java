@@ -0,0 +1,194 @@
+package com.winlator.xserver;
+
+import static com.winlator.xserver.RequestDescriptor.FLAG_READ_ONLY;
+import static com.winlator.xserver.RequestDescriptor.FLAG_REPLY;
+import static com.winlator.xserver.RequestDescriptor.FLAG_WRITES_IF_REQUEST_DATA;
+
+import com.winlator.xconnector.XInputStream;
+import com.winlator.xconnector.XOutputStream;
+import com.winlator.xserver.errors.XRequestError;
+import com.winlator.xserver.requests.AtomRequests;
+import com.winlator.xserver.requests.CursorRequests;
+import com.winlator.xserver.requests.DrawRequests;
+import com.winlator.xserver.requests.ExtensionRequests;
+import com.winlator.xserver.requests.FontRequests;
+import com.winlator.xserver.requests.GrabRequests;
+import com.winlator.xserver.requests.GraphicsContextRequests;
+import com.winlator.xserver.requests.KeyboardRequests;
+import com.winlator.xserver.requests.PixmapRequests;
+import com.winlator.xserver.requests.SelectionRequests;
+import com.winlator.xserver.requests.WindowRequests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+
+public class RequestRegistry {
+    private static final int WINDOWS = XServer.lockMask(XServer.Lockable.WINDOW_MANAGER);
+    private static final int WINDOWS_CURSORS = XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.CURSOR_MANAGER);
+    private static final int WINDOWS_DRAWABLES = XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER);
+    private static final int WINDOWS_DRAWABLES_INPUT = XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.INPUT_DEVICE);
+    private static final int WINDOWS_DRAWABLES_INPUT_CURSORS = XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.INPUT_DEVICE, XServer.Lockable.CURSOR_MANAGER);
+    private static final int WINDOWS_INPUT = XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE);
+    private static final int WINDOWS_INPUT_CURSORS = XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE, XServer.Lockable.CURSOR_MANAGER);
+    private static final int GCS = XServer.lockMask(XServer.Lockable.GRAPHIC_CONTEXT_MANAGER);
+    private static final int INPUT = XServer.lockMask(XServer.Lockable.INPUT_DEVICE);
+    private static final int DRAWABLES_GCS = XServer.lockMask(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER);
+    private static final int PIXMAPS_DRAWABLES = XServer.lockMask(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER);
+    private static final int PIXMAPS_DRAWABLES_CURSORS = XServer.lockMask(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.CURSOR_MANAGER);
+    private static final int PIXMAPS_DRAWABLES_GCS = XServer.lockMask(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER);
+    private static final RequestDescriptor.Handler SKIP_REQUEST = (client, inputStream, outputStream) -> client.skipRequest();
+    private final RequestDescriptor[] coreRequests = new RequestDescriptor[128];
+    private final RequestDescriptor[][] extensionRequests = new RequestDescriptor[128][];
+    private final ArrayList<RequestDescriptor> descriptors = new ArrayList<>();
+    private volatile boolean statsEnabled = true;
+
+    public RequestRegistry() {
+        registerCoreRequests();
+    }
+
+    public synchronized void register(RequestDescriptor descriptor) {
+        if (descriptor.isExtensionRequest()) {
+            int index = descriptor.majorOpcode & 0x7f;
+            if (extensionRequests[index] == null) extensionRequests[index] = new RequestDescriptor[256];
+            extensionRequests[index][descriptor.minorOpcode & 0xff] = descriptor;
+        }
+        else coreRequests[descriptor.majorOpcode] = descriptor;
+        descriptors.add(descriptor);
+    }
+
+    public RequestDescriptor get(byte majorOpcode, byte minorOpcode) {
+        if (majorOpcode >= 0) return coreRequests[majorOpcode];
+        RequestDescriptor[] requests = extensionRequests[majorOpcode & 0x7f];
+        return requests != null ? requests[minorOpcode & 0xff] : null;
+    }
+
+    public void dispatch(RequestDescriptor descriptor, XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        if (!statsEnabled) {
+            if (descriptor.lockMask == 0) {
+                descriptor.handler.handleRequest(client, inputStream, outputStream);
+            }
+            else try (XLock lock = lock(descriptor, client)) {
+                descriptor.handler.handleRequest(client, inputStream, outputStream);
+            }
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        long lockTime = startTime;
+        try {
+            if (descriptor.lockMask == 0) {
+                descriptor.handler.handleRequest(client, inputStream, outputStream);
+            }
+            else try (XLock lock = lock(descriptor, client)) {
+                lockTime = System.nanoTime();
+                descriptor.handler.handleRequest(client, inputStream, outputStream);
+            }
+        }
+        finally {
+            descriptor.record(System.nanoTime() - startTime, lockTime - startTime);
+        }
+    }
+
+    private static XLock lock(RequestDescriptor descriptor, XClient client) {
+        return descriptor.isReadOnly(client) ? client.xServer.lockShared(descriptor.lockMask) : client.xServer.lock(descriptor.lockMask);
+    }
+
+    public boolean isStatsEnabled() {
+        return statsEnabled;
+    }
+
+    public void setStatsEnabled(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
+    }
+
+    public synchronized ArrayList<RequestDescriptor> getDescriptors() {
+        return new ArrayList<>(descriptors);
+    }
+
+    public synchronized void resetStats() {
+        for (RequestDescriptor descriptor : descriptors) descriptor.resetStats();
+    }
+
+    public String dumpStats() {
+        ArrayList<RequestDescriptor> descriptors = getDescriptors();
+        Collections.sort(descriptors, (a, b) -> Long.compare(b.getTotalTime(), a.getTotalTime()));
+
+        StringBuilder sb = new StringBuilder();
+        for (RequestDescriptor descriptor : descriptors) {
+            long count = descriptor.getCount();
+            if (count == 0) continue;
+            sb.append(String.format(Locale.ENGLISH, "%-28s count=%d total=%.3fms lockWait=%.3fms avg=%.1fus\n",
+                descriptor.name, count, descriptor.getTotalTime() / 1e6f, descriptor.getLockWaitTime() / 1e6f, descriptor.getTotalTime() / 1e3f / count));
+        }
+        return sb.toString();
+    }
+
+    private void registerCoreRequest(String name, byte opcode, int lockMask, int flags, RequestDescriptor.Handler handler) {
+        register(new RequestDescriptor(name, opcode, lockMask, flags, handler));
+    }
+
+    private void registerCoreRequests() {
+        registerCoreRequest("CreateWindow", ClientOpcodes.CREATE_WINDOW, WINDOWS_DRAWABLES_INPUT_CURSORS, 0, WindowRequests::createWindow);
+        registerCoreRequest("ChangeWindowAttributes", ClientOpcodes.CHANGE_WINDOW_ATTRIBUTES, WINDOWS_CURSORS, 0, WindowRequests::changeWindowAttributes);
+        registerCoreRequest("GetWindowAttributes", ClientOpcodes.GET_WINDOW_ATTRIBUTES, WINDOWS, FLAG_READ_ONLY | FLAG_REPLY, WindowRequests::getWindowAttributes);
+        registerCoreRequest("DestroyWindow", ClientOpcodes.DESTROY_WINDOW, WINDOWS_DRAWABLES_INPUT, 0, WindowRequests::destroyWindow);
+        registerCoreRequest("DestroySubwindows", ClientOpcodes.DESTROY_SUB_WINDOW, WINDOWS_DRAWABLES_INPUT, 0, WindowRequests::destroySubWindows);
+        registerCoreRequest("ReparentWindow", ClientOpcodes.REPARENT_WINDOW, WINDOWS, 0, WindowRequests::reparentWindow);
+        registerCoreRequest("MapWindow", ClientOpcodes.MAP_WINDOW, WINDOWS_INPUT, 0, WindowRequests::mapWindow);
+        registerCoreRequest("MapSubwindows", ClientOpcodes.MAP_SUB_WINDOW, WINDOWS_INPUT, 0, WindowRequests::mapSubWindows);
+        registerCoreRequest("UnmapWindow", ClientOpcodes.UNMAP_WINDOW, WINDOWS_INPUT, 0, WindowRequests::unmapWindow);
+        registerCoreRequest("ConfigureWindow", ClientOpcodes.CONFIGURE_WINDOW, WINDOWS_INPUT, 0, WindowRequests::configureWindow);
+        registerCoreRequest("GetGeometry", ClientOpcodes.GET_GEOMETRY, WINDOWS_DRAWABLES, FLAG_READ_ONLY | FLAG_REPLY, WindowRequests::getGeometry);
+        registerCoreRequest("QueryTree", ClientOpcodes.QUERY_TREE, WINDOWS, FLAG_READ_ONLY | FLAG_REPLY, WindowRequests::queryTree);
+        registerCoreRequest("InternAtom", ClientOpcodes.INTERN_ATOM, 0, FLAG_REPLY, AtomRequests::internAtom);
+        registerCoreRequest("GetAtomName", ClientOpcodes.GET_ATOM_NAME, 0, FLAG_READ_ONLY | FLAG_REPLY, AtomRequests::getAtomName);
+        registerCoreRequest("ChangeProperty", ClientOpcodes.CHANGE_PROPERTY, WINDOWS, 0, WindowRequests::changeProperty);
+        registerCoreRequest("DeleteProperty", ClientOpcodes.DELETE_PROPERTY, WINDOWS, 0, WindowRequests::deleteProperty);
+        registerCoreRequest("GetProperty", ClientOpcodes.GET_PROPERTY, WINDOWS, FLAG_READ_ONLY | FLAG_REPLY | FLAG_WRITES_IF_REQUEST_DATA, WindowRequests::getProperty);
+        registerCoreRequest("SetSelectionOwner", ClientOpcodes.SET_SELECTION_OWNER, WINDOWS, 0, SelectionRequests::setSelectionOwner);
+        registerCoreRequest("GetSelectionOwner", ClientOpcodes.GET_SELECTION_OWNER, WINDOWS, FLAG_REPLY, SelectionRequests::getSelectionOwner);
+        registerCoreRequest("ConvertSelection", ClientOpcodes.CONVERT_SELECTION, WINDOWS, 0, SelectionRequests::convertSelection);
+        registerCoreRequest("SendEvent", ClientOpcodes.SEND_EVENT, XServer.LOCK_ALL, 0, WindowRequests::sendEvent);
+        registerCoreRequest("GrabPointer", ClientOpcodes.GRAB_POINTER, WINDOWS_INPUT_CURSORS, FLAG_REPLY, GrabRequests::grabPointer);
+        registerCoreRequest("UngrabPointer", ClientOpcodes.UNGRAB_POINTER, WINDOWS_INPUT, 0, GrabRequests::ungrabPointer);
+        registerCoreRequest("GrabServer", ClientOpcodes.GRAB_SERVER, XServer.LOCK_ALL, FLAG_REPLY, GrabRequests::grabServer);
+        registerCoreRequest("UngrabServer", ClientOpcodes.UNGRAB_SERVER, XServer.LOCK_ALL, FLAG_REPLY, GrabRequests::ungrabServer);
+        registerCoreRequest("QueryPointer", ClientOpcodes.QUERY_POINTER, WINDOWS_INPUT, FLAG_READ_ONLY | FLAG_REPLY, WindowRequests::queryPointer);
+        registerCoreRequest("TranslateCoordinates", ClientOpcodes.TRANSLATE_COORDINATES, WINDOWS, FLAG_READ_ONLY | FLAG_REPLY, WindowRequests::translateCoordinates);
+        registerCoreRequest("WarpPointer", ClientOpcodes.WARP_POINTER, WINDOWS_INPUT, 0, WindowRequests::warpPointer);
+        registerCoreRequest("SetInputFocus", ClientOpcodes.SET_INPUT_FOCUS, WINDOWS, 0, WindowRequests::setInputFocus);
+        registerCoreRequest("GetInputFocus", ClientOpcodes.GET_INPUT_FOCUS, WINDOWS, FLAG_READ_ONLY | FLAG_REPLY, WindowRequests::getInputFocus);
+        registerCoreRequest("QueryKeymap", ClientOpcodes.QUERY_KEYMAP, WINDOWS, FLAG_READ_ONLY | FLAG_REPLY, KeyboardRequests::queryKeymap);
+        registerCoreRequest("OpenFont", ClientOpcodes.OPEN_FONT, 0, 0, FontRequests::openFont);
+        registerCoreRequest("ListFonts", ClientOpcodes.LIST_FONTS, 0, FLAG_READ_ONLY | FLAG_REPLY, FontRequests::listFonts);
+        registerCoreRequest("CreatePixmap", ClientOpcodes.CREATE_PIXMAP, PIXMAPS_DRAWABLES, 0, PixmapRequests::createPixmap);
+        registerCoreRequest("FreePixmap", ClientOpcodes.FREE_PIXMAP, PIXMAPS_DRAWABLES, 0, PixmapRequests::freePixmap);
+        registerCoreRequest("CreateGC", ClientOpcodes.CREATE_GC, PIXMAPS_DRAWABLES_GCS, 0, GraphicsContextRequests::createGC);
+        registerCoreRequest("ChangeGC", ClientOpcodes.CHANGE_GC, PIXMAPS_DRAWABLES_GCS, 0, GraphicsContextRequests::changeGC);
+        registerCoreRequest("SetClipRectangles", ClientOpcodes.SET_CLIP_RECTANGLES, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("FreeGC", ClientOpcodes.FREE_GC, GCS, 0, GraphicsContextRequests::freeGC);
+        registerCoreRequest("CopyArea", ClientOpcodes.COPY_AREA, DRAWABLES_GCS, 0, DrawRequests::copyArea);
+        registerCoreRequest("PolyLine", ClientOpcodes.POLY_LINE, DRAWABLES_GCS, 0, DrawRequests::polyLine);
+        registerCoreRequest("PolySegment", ClientOpcodes.POLY_SEGMENT, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("PolyRectangle", ClientOpcodes.POLY_RECTANGLE, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("PolyFillRectangle", ClientOpcodes.POLY_FILL_RECTANGLE, DRAWABLES_GCS, 0, DrawRequests::polyFillRectangle);
+        registerCoreRequest("PutImage", ClientOpcodes.PUT_IMAGE, DRAWABLES_GCS, 0, DrawRequests::putImage);
+        registerCoreRequest("GetImage", ClientOpcodes.GET_IMAGE, PIXMAPS_DRAWABLES, FLAG_READ_ONLY | FLAG_REPLY, DrawRequests::getImage);
+        registerCoreRequest("CreateColormap", ClientOpcodes.CREATE_COLORMAP, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("FreeColormap", ClientOpcodes.FREE_COLORMAP, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("CreateCursor", ClientOpcodes.CREATE_CURSOR, PIXMAPS_DRAWABLES_CURSORS, 0, CursorRequests::createCursor);
+        registerCoreRequest("CreateGlyphCursor", ClientOpcodes.CREATE_GLYPH_CURSOR, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("FreeCursor", ClientOpcodes.FREE_CURSOR, PIXMAPS_DRAWABLES_CURSORS, 0, CursorRequests::freeCursor);
+        registerCoreRequest("QueryExtension", ClientOpcodes.QUERY_EXTENSION, 0, FLAG_READ_ONLY | FLAG_REPLY, ExtensionRequests::queryExtension);
+        registerCoreRequest("GetKeyboardMapping", ClientOpcodes.GET_KEYBOARD_MAPPING, INPUT, FLAG_READ_ONLY | FLAG_REPLY, KeyboardRequests::getKeyboardMapping);
+        registerCoreRequest("Bell", ClientOpcodes.BELL, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("SetScreenSaver", ClientOpcodes.SET_SCREEN_SAVER, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("GetScreenSaver", ClientOpcodes.GET_SCREEN_SAVER, 0, FLAG_READ_ONLY | FLAG_REPLY, WindowRequests::getScreenSaver);
+        registerCoreRequest("ForceScreenSaver", ClientOpcodes.FORCE_SCREEN_SAVER, 0, 0, SKIP_REQUEST);
+        registerCoreRequest("GetPointerMapping", ClientOpcodes.GET_POINTER_MAPPING, 0, FLAG_READ_ONLY | FLAG_REPLY, CursorRequests::getPointerMapping);
+        registerCoreRequest("GetModifierMapping", ClientOpcodes.GET_MODIFIER_MAPPING, 0, FLAG_READ_ONLY | FLAG_REPLY, KeyboardRequests::getModifierMapping);
+        registerCoreRequest("NoOperation", ClientOpcodes.NO_OPERATION, 0, 0, SKIP_REQUEST);
+    }
+}
@@ -1,34 +1,32 @@
 package com.winlator.xserver;
 
-import androidx.collection.ArraySet;
-
-import java.util.Iterator;
+import java.util.BitSet;
 
 public class ResourceIDs {
-    private final ArraySet<Integer> idBases = new ArraySet<>();
+    private final BitSet idBases = new BitSet();
+    private final int baseShift;
     public final int idMask;
 
     public ResourceIDs(int maxClients) {
         int clientsBits = 32 - Integer.numberOfLeadingZeros(maxClients);
         clientsBits = Integer.bitCount(maxClients) == 1 ? clientsBits - 1 : clientsBits;
-        int base = 29 - clientsBits;
-        idMask = (1 << base) - 1;
-        for (int i = 1; i < maxClients; i++) idBases.add(i << base);
+        baseShift = 29 - clientsBits;
+        idMask = (1 << baseShift) - 1;
+        idBases.set(1, maxClients);
     }
 
-    public synchronized Integer get() {
-        if (idBases.isEmpty()) return -1;
-        Iterator<Integer> iter = idBases.iterator();
-        int idBase = iter.next();
-        iter.remove();
-        return idBase;
+    public synchronized int get() {
+        int index = idBases.nextSetBit(0);
+        if (index == -1) return -1;
+        idBases.clear(index);
+        return index << baseShift;
     }
 
     public boolean isInInterval(int value, int idBase) {
         return (value | idMask) == (idBase | idMask);
     }
 
-    public synchronized void free(Integer idBase) {
-        idBases.add(idBase);
+    public synchronized void free(int idBase) {
+        if (idBase > 0) idBases.set(idBase >>> baseShift);
     }
 }
@@ -1,21 +1,20 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
+import com.winlator.core.IntObjectMap;
 import com.winlator.sysvshm.SysVSharedMemory;
 
 import java.nio.ByteBuffer;
 
 public class SHMSegmentManager {
     private final SysVSharedMemory sysVSharedMemory;
-    private final SparseArray<ByteBuffer> shmSegments = new SparseArray<>();
+    private final IntObjectMap<ByteBuffer> shmSegments = new IntObjectMap<>();
 
     public SHMSegmentManager(SysVSharedMemory sysVSharedMemory) {
         this.sysVSharedMemory = sysVSharedMemory;
     }
 
     public void attach(int xid, int shmid) {
-        if (shmSegments.indexOfKey(xid) >= 0) detach(xid);
+        if (shmSegments.containsKey(xid)) detach(xid);
         ByteBuffer data = sysVSharedMemory.attach(shmid);
         if (data != null) shmSegments.put(xid, data);
     }
@@ -1,11 +1,12 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
+import com.winlator.core.IntObjectMap;
 import com.winlator.xserver.events.SelectionClear;
+import com.winlator.xserver.events.SelectionNotify;
+import com.winlator.xserver.events.SelectionRequest;
 
 public class SelectionManager implements XResourceManager.OnResourceLifecycleListener {
-    private final SparseArray<Selection> selections = new SparseArray<>();
+    private final IntObjectMap<Selection> selections = new IntObjectMap<>();
 
     public SelectionManager(WindowManager windowManager) {
         windowManager.addOnResourceLifecycleListener(this);
@@ -25,6 +26,14 @@ public class SelectionManager implements XResourceManager.OnResourceLifecycleLis
         selection.client = client;
     }
 
+    public void convertSelection(int atom, Window requestor, XClient client, int target, int property, int timestamp) {
+        Selection selection = selections.get(atom);
+        if (selection != null && selection.owner != null) {
+            selection.client.sendEvent(new SelectionRequest(timestamp, selection.owner, requestor, atom, target, property));
+        }
+        else client.sendEvent(new SelectionNotify(timestamp, requestor, atom, target, 0));
+    }
+
     public Selection getSelection(int atom) {
         Selection selection = selections.get(atom);
         if (selection != null) return selection;
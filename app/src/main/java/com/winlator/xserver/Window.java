@@ -1,7 +1,6 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
+import com.winlator.core.IntObjectMap;
 import com.winlator.xserver.events.Event;
 import com.winlator.xserver.events.PropertyNotify;
 
@@ -29,13 +28,16 @@ public class Window extends XResource {
     private short borderWidth;
     private Window parent;
     public final XClient originClient;
+    private final AtomTable atomTable;
     public final WindowAttributes attributes = new WindowAttributes(this);
-    private final SparseArray<Property> properties = new SparseArray<>();
+    private final IntObjectMap<Property> properties = new IntObjectMap<>();
     private final ArrayList<Window> children = new ArrayList<>();
     private final List<Window> immutableChildren = Collections.unmodifiableList(children);
     private final ArrayList<EventListener> eventListeners = new ArrayList<>();
+    private int allEventMasks = 0;
+    private int propagateEventMasks = 0;
 
-    public Window(int id, Drawable content, int x, int y, int width, int height, XClient originClient) {
+    public Window(int id, Drawable content, int x, int y, int width, int height, XClient originClient, AtomTable atomTable) {
         super(id);
         this.content = content;
         this.x = (short)x;
@@ -43,6 +45,7 @@ public class Window extends XResource {
         this.width = (short)width;
         this.height = (short)height;
         this.originClient = originClient;
+        this.atomTable = atomTable;
     }
 
     public short getX() {
@@ -118,14 +121,14 @@ public class Window extends XResource {
         Property property = getProperty(atom);
         boolean modified = false;
         if (property == null) {
-            addProperty((property = new Property(atom, type, format, data)));
+            addProperty((property = new Property(atom, type, format, data, atomTable)));
             modified = true;
         }
         else if (mode == Property.Mode.REPLACE) {
             if (property.format == format) {
                 property.replace(data);
             }
-            else properties.put(atom, new Property(atom, type, format, data));
+            else properties.put(atom, new Property(atom, type, format, data, atomTable));
             modified = true;
         }
         else if (property.format == format && property.type == type) {
@@ -146,32 +149,32 @@ public class Window extends XResource {
     }
 
     public String getName() {
-        Property property = getProperty(Atom.getId("WM_NAME"));
+        Property property = getProperty(Atom.WM_NAME);
         return property != null ? property.toString() : "";
     }
 
     public String getClassName() {
-        Property property = getProperty(Atom.getId("WM_CLASS"));
+        Property property = getProperty(Atom.WM_CLASS);
         return property != null ? property.toString() : "";
     }
 
     public int getWMHintsValue(WMHints wmHints) {
-        Property property = getProperty(Atom.getId("WM_HINTS"));
+        Property property = getProperty(Atom.WM_HINTS);
         return property != null ? property.getInt(wmHints.ordinal()) : 0;
     }
 
     public int getProcessId() {
-        Property property = getProperty(Atom.getId("_NET_WM_PID"));
+        Property property = getProperty(atomTable.getId("_NET_WM_PID"));
         return property != null ? property.getInt(0) : 0;
     }
 
     public boolean isWoW64() {
-        Property property = getProperty(Atom.getId("_NET_WM_WOW64"));
-        return property != null && property.data.get(0) == 1;
+        Property property = getProperty(atomTable.getId("_NET_WM_WOW64"));
+        return property != null && property.getByte(0) == 1;
     }
 
     public long getHandle() {
-        Property property = getProperty(Atom.getId("_NET_WM_HWND"));
+        Property property = getProperty(atomTable.getId("_NET_WM_HWND"));
         return property != null ? property.getLong(0) : 0;
     }
 
@@ -188,12 +191,14 @@ public class Window extends XResource {
         if (child == null || child.parent == this) return;
         child.parent = this;
         children.add(child);
+        child.updatePropagateEventMasks();
     }
 
     public void removeChild(Window child) {
         if (child == null || child.parent != this) return;
         child.parent = null;
         children.remove(child);
+        child.updatePropagateEventMasks();
     }
 
     public Window previousSibling() {
@@ -230,24 +235,41 @@ public class Window extends XResource {
 
     public void addEventListener(EventListener eventListener) {
         eventListeners.add(eventListener);
+        updateAllEventMasks();
     }
 
     public void removeEventListener(EventListener eventListener) {
         eventListeners.remove(eventListener);
+        updateAllEventMasks();
     }
 
-    public boolean hasEventListenerFor(int eventId) {
-        for (EventListener eventListener : eventListeners) {
-            if (eventListener.isInterestedIn(eventId)) return true;
+    private void updateAllEventMasks() {
+        int allEventMasks = 0;
+        for (EventListener eventListener : eventListeners) allEventMasks |= eventListener.eventMask.getBits();
+        if (allEventMasks == this.allEventMasks) return;
+        this.allEventMasks = allEventMasks;
+        updatePropagateEventMasks();
+    }
+
+    public void updatePropagateEventMasks() {
+        Stack<Window> stack = new Stack<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            Window window = stack.pop();
+            int propagateEventMasks = window.allEventMasks;
+            if (window.parent != null) propagateEventMasks |= window.parent.propagateEventMasks & ~window.attributes.getDoNotPropagateMask().getBits();
+            if (propagateEventMasks == window.propagateEventMasks && window != this) continue;
+            window.propagateEventMasks = propagateEventMasks;
+            stack.addAll(window.children);
         }
-        return false;
+    }
+
+    public boolean hasEventListenerFor(int eventId) {
+        return (allEventMasks & eventId) != 0;
     }
 
     public boolean hasEventListenerFor(Bitmask mask) {
-        for (EventListener eventListener : eventListeners) {
-            if (eventListener.isInterestedIn(mask)) return true;
-        }
-        return false;
+        return (allEventMasks & mask.getBits()) != 0;
     }
 
     public void sendEvent(int eventId, Event event) {
@@ -286,6 +308,16 @@ public class Window extends XResource {
         for (EventListener eventListener : eventListeners) eventListener.sendEvent(event);
     }
 
+    public void sendMotionEvent(Bitmask eventMask, Event event, Event hintEvent, XClient client, int motionHintGeneration) {
+        for (EventListener eventListener : eventListeners) {
+            if (!eventListener.isInterestedIn(eventMask) || (client != null && eventListener.client != client)) continue;
+            if (eventListener.isInterestedIn(Event.POINTER_MOTION_HINT)) {
+                if (hintEvent != null) eventListener.sendMotionHint(hintEvent, motionHintGeneration);
+            }
+            else eventListener.sendEvent(event);
+        }
+    }
+
     public boolean containsPoint(short rootX, short rootY) {
         short[] localPoint = rootPointToLocal(rootX, rootY);
         return localPoint[0] >= 0 && localPoint[1] >= 0 && localPoint[0] < width && localPoint[1] < height;
@@ -332,6 +364,7 @@ public class Window extends XResource {
     }
 
     public Window getAncestorWithEventMask(Bitmask eventMask) {
+        if ((propagateEventMasks & eventMask.getBits()) == 0) return null;
         Window window = this;
         while (window != null) {
             if (window.hasEventListenerFor(eventMask)) return window;
@@ -346,6 +379,7 @@ public class Window extends XResource {
     }
 
     public Window getAncestorWithEventId(int eventId, Window endWindow) {
+        if ((propagateEventMasks & eventId) == 0) return null;
         Window window = this;
         while (window != null) {
             if (window.hasEventListenerFor(eventId)) return window;
@@ -384,9 +418,7 @@ public class Window extends XResource {
     }
 
     public Bitmask getAllEventMasks() {
-        Bitmask eventMask = new Bitmask();
-        for (EventListener eventListener : eventListeners) eventMask.join(eventListener.eventMask);
-        return eventMask;
+        return new Bitmask(allEventMasks);
     }
 
     public EventListener getButtonPressListener() {
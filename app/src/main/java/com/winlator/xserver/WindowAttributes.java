@@ -111,7 +111,8 @@ public class WindowAttributes {
     }
 
     public void update(Bitmask valueMask, XInputStream inputStream, XClient client) {
-        for (int index : valueMask) {
+        for (int bits = valueMask.getBits(); bits != 0; bits &= bits - 1) {
+            int index = Integer.lowestOneBit(bits);
             switch (index) {
                 case FLAG_BACKGROUND_PIXEL:
                     window.getContent().fillColor(inputStream.readInt());
@@ -142,6 +143,7 @@ public class WindowAttributes {
                     break;
                 case FLAG_DO_NOT_PROPAGATE_MASK:
                     doNotPropagateMask = new Bitmask(inputStream.readInt());
+                    window.updatePropagateEventMasks();
                     break;
                 case FLAG_CURSOR:
                     cursor = client.xServer.cursorManager.getCursor(inputStream.readInt());
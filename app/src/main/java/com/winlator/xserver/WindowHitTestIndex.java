@@ -0,0 +1,119 @@
+package com.winlator.xserver;
+
+import java.util.Arrays;
+
+public class WindowHitTestIndex implements WindowManager.OnWindowModificationListener {
+    private static final int CELL_SHIFT = 6;
+    private final Window rootWindow;
+    private Window[] windows = new Window[64];
+    private short[] clipRects = new short[64 * 4];
+    private int windowCount = 0;
+    private int columns;
+    private int rows;
+    private int[][] cells = new int[0][];
+    private int[] cellSizes = new int[0];
+    private boolean dirty = true;
+
+    public WindowHitTestIndex(Window rootWindow) {
+        this.rootWindow = rootWindow;
+    }
+
+    public synchronized void invalidate() {
+        dirty = true;
+    }
+
+    @Override
+    public void onMapWindow(Window window) {
+        invalidate();
+    }
+
+    @Override
+    public void onUnmapWindow(Window window) {
+        invalidate();
+    }
+
+    @Override
+    public void onChangeWindowZOrder(Window window) {
+        invalidate();
+    }
+
+    @Override
+    public void onUpdateWindowGeometry(Window window, boolean resized) {
+        invalidate();
+    }
+
+    public synchronized Window findPointWindow(short rootX, short rootY) {
+        if (dirty) rebuild();
+        if (rootX < 0 || rootY < 0) return null;
+        int column = rootX >> CELL_SHIFT;
+        int row = rootY >> CELL_SHIFT;
+        if (column >= columns || row >= rows) return null;
+
+        int cell = row * columns + column;
+        int[] indices = cells[cell];
+        for (int i = cellSizes[cell] - 1; i >= 0; i--) {
+            int index = indices[i];
+            int offset = index * 4;
+            if (rootX >= clipRects[offset] && rootY >= clipRects[offset + 1] && rootX < clipRects[offset + 2] && rootY < clipRects[offset + 3]) {
+                return windows[index];
+            }
+        }
+        return null;
+    }
+
+    private void rebuild() {
+        Arrays.fill(windows, 0, windowCount, null);
+        windowCount = 0;
+        columns = (rootWindow.getWidth() + (1 << CELL_SHIFT) - 1) >> CELL_SHIFT;
+        rows = (rootWindow.getHeight() + (1 << CELL_SHIFT) - 1) >> CELL_SHIFT;
+        if (cells.length != columns * rows) {
+            cells = new int[columns * rows][];
+            cellSizes = new int[cells.length];
+            for (int i = 0; i < cells.length; i++) cells[i] = new int[8];
+        }
+        else Arrays.fill(cellSizes, 0);
+
+        if (rootWindow.attributes.isMapped()) {
+            addWindow(rootWindow, rootWindow.getX(), rootWindow.getY(), Short.MIN_VALUE, Short.MIN_VALUE, Short.MAX_VALUE, Short.MAX_VALUE);
+        }
+        dirty = false;
+    }
+
+    private void addWindow(Window window, int x, int y, int clipLeft, int clipTop, int clipRight, int clipBottom) {
+        int left = Math.max(x, clipLeft);
+        int top = Math.max(y, clipTop);
+        int right = Math.min(x + window.getWidth(), clipRight);
+        int bottom = Math.min(y + window.getHeight(), clipBottom);
+        if (left >= right || top >= bottom) return;
+
+        int index = windowCount++;
+        if (index == windows.length) {
+            windows = Arrays.copyOf(windows, index * 2);
+            clipRects = Arrays.copyOf(clipRects, index * 8);
+        }
+        windows[index] = window;
+        int offset = index * 4;
+        clipRects[offset] = (short)left;
+        clipRects[offset + 1] = (short)top;
+        clipRects[offset + 2] = (short)right;
+        clipRects[offset + 3] = (short)bottom;
+
+        int firstColumn = Math.max(left, 0) >> CELL_SHIFT;
+        int firstRow = Math.max(top, 0) >> CELL_SHIFT;
+        int lastColumn = Math.min((right - 1) >> CELL_SHIFT, columns - 1);
+        int lastRow = Math.min((bottom - 1) >> CELL_SHIFT, rows - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                int size = cellSizes[cell];
+                if (size == cells[cell].length) cells[cell] = Arrays.copyOf(cells[cell], size * 2);
+                cells[cell][size] = index;
+                cellSizes[cell] = size + 1;
+            }
+        }
+
+        for (Window child : window.getChildren()) {
+            if (child.attributes.isMapped()) addWindow(child, x + child.getX(), y + child.getY(), left, top, right, bottom);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
+import com.winlator.core.IntObjectMap;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xserver.errors.BadIdChoice;
 import com.winlator.xserver.errors.BadMatch;
@@ -22,8 +21,10 @@ import java.util.List;
 public class WindowManager extends XResourceManager {
     public enum FocusRevertTo {NONE, POINTER_ROOT, PARENT}
     public final Window rootWindow;
-    private final SparseArray<Window> windows = new SparseArray<>();
+    private final IntObjectMap<Window> windows = new IntObjectMap<>();
     public final DrawableManager drawableManager;
+    public final AtomTable atomTable;
+    private final WindowHitTestIndex hitTestIndex;
     private Window focusedWindow;
     private FocusRevertTo focusRevertTo = FocusRevertTo.NONE;
     private final ArrayList<OnWindowModificationListener> onWindowModificationListeners = new ArrayList<>();
@@ -42,15 +43,19 @@ public class WindowManager extends XResourceManager {
         default void onUpdateWindowAttributes(Window window, Bitmask mask) {}
 
         default void onModifyWindowProperty(Window window, Property property) {}
+
+        default void onDeleteWindowProperty(Window window, int atom) {}
     }
 
-    public WindowManager(ScreenInfo screenInfo, DrawableManager drawableManager) {
+    public WindowManager(ScreenInfo screenInfo, DrawableManager drawableManager, AtomTable atomTable) {
         this.drawableManager = drawableManager;
+        this.atomTable = atomTable;
         int id = IDGenerator.generate();
         Drawable drawable = drawableManager.createDrawable(id, screenInfo.width, screenInfo.height, drawableManager.getVisual());
-        rootWindow = new Window(id, drawable, 0, 0, screenInfo.width, screenInfo.height, null);
+        rootWindow = new Window(id, drawable, 0, 0, screenInfo.width, screenInfo.height, null, atomTable);
         rootWindow.attributes.setMapped(true);
         windows.put(id, rootWindow);
+        hitTestIndex = new WindowHitTestIndex(rootWindow);
     }
 
     public Window getWindow(int id) {
@@ -147,7 +152,7 @@ public class WindowManager extends XResourceManager {
     }
 
     public Window createWindow(int id, Window parent, short x, short y, short width, short height, WindowAttributes.WindowClass windowClass, Visual visual, byte depth, XClient client) throws XRequestError {
-        if (windows.indexOfKey(id) >= 0) throw new BadIdChoice(id);
+        if (windows.containsKey(id)) throw new BadIdChoice(id);
 
         boolean isInputOutput = false;
         switch (windowClass) {
@@ -177,7 +182,7 @@ public class WindowManager extends XResourceManager {
             if (drawable == null) throw new BadIdChoice(id);
         }
 
-        final Window window = new Window(id, drawable, x, y, width, height, client);
+        final Window window = new Window(id, drawable, x, y, width, height, client, atomTable);
         window.attributes.setWindowClass(windowClass);
         if (drawable != null) drawable.setOnDrawListener(() -> triggerOnUpdateWindowContent(window));
         windows.put(id, window);
@@ -238,7 +243,8 @@ public class WindowManager extends XResourceManager {
         Window sibling = null;
         Window.StackMode stackMode = null;
 
-        for (int index : valueMask) {
+        for (int bits = valueMask.getBits(); bits != 0; bits &= bits - 1) {
+            int index = Integer.lowestOneBit(bits);
             switch (index) {
                 case Window.FLAG_X:
                     x = (short)inputStream.readInt();
@@ -283,16 +289,14 @@ public class WindowManager extends XResourceManager {
         Window oldParent = window.getParent();
         if (oldParent != null) oldParent.removeChild(window);
         newParent.addChild(window);
+        if (window.attributes.isMapped()) {
+            triggerOnChangeWindowZOrder(window);
+        }
+        else hitTestIndex.invalidate();
     }
 
     public Window findPointWindow(short rootX, short rootY) {
-        return findPointWindow(rootWindow, rootX, rootY);
-    }
-
-    private Window findPointWindow(Window window, short rootX, short rootY) {
-        if (!(window.attributes.isMapped() && window.containsPoint(rootX, rootY))) return null;
-        Window child = window.getChildByCoords(rootX, rootY);
-        return child != null ? findPointWindow(child, rootX, rootY) : window;
+        return hitTestIndex.findPointWindow(rootX, rootY);
     }
 
     public void addOnWindowModificationListener(OnWindowModificationListener onWindowModificationListener) {
@@ -304,18 +308,21 @@ public class WindowManager extends XResourceManager {
     }
 
     private void triggerOnMapWindow(Window window) {
+        hitTestIndex.onMapWindow(window);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onMapWindow(window);
         }
     }
 
     private void triggerOnUnmapWindow(Window window) {
+        hitTestIndex.onUnmapWindow(window);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onUnmapWindow(window);
         }
     }
 
     private void triggerOnChangeWindowZOrder(Window window) {
+        hitTestIndex.onChangeWindowZOrder(window);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onChangeWindowZOrder(window);
         }
@@ -328,6 +335,7 @@ public class WindowManager extends XResourceManager {
     }
 
     protected void triggerOnUpdateWindowGeometry(Window window, boolean resized) {
+        hitTestIndex.onUpdateWindowGeometry(window, resized);
         for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
             onWindowModificationListeners.get(i).onUpdateWindowGeometry(window, resized);
         }
@@ -344,4 +352,10 @@ public class WindowManager extends XResourceManager {
             onWindowModificationListeners.get(i).onModifyWindowProperty(window, property);
         }
     }
+
+    public void triggerOnDeleteWindowProperty(Window window, int atom) {
+        for (int i = onWindowModificationListeners.size()-1; i >= 0; i--) {
+            onWindowModificationListeners.get(i).onDeleteWindowProperty(window, atom);
+        }
+    }
 }
@@ -2,30 +2,35 @@ package com.winlator.xserver;
 
 import androidx.collection.ArrayMap;
 
+import com.winlator.core.IntObjectMap;
+import com.winlator.xconnector.Client;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xserver.events.Event;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 public class XClient implements XResourceManager.OnResourceLifecycleListener {
     public final XServer xServer;
     private boolean authenticated = false;
-    public final Integer resourceIDBase;
+    public final int resourceIDBase;
     private short sequenceNumber = 0;
     private int requestLength;
     private byte requestData;
     private int initialLength;
+    private volatile int motionHintGeneration = 0;
+    private short[] shortBuffer = new short[0];
+    public final Client connection;
     private final XInputStream inputStream;
     private final XOutputStream outputStream;
     private final ArrayMap<Window, EventListener> eventListeners = new ArrayMap<>();
-    private final ArrayList<XResource> resources = new ArrayList<>();
+    private final IntObjectMap<XResource> resources = new IntObjectMap<>();
 
-    public XClient(XServer xServer, XInputStream inputStream, XOutputStream outputStream) {
+    public XClient(XServer xServer, Client connection) {
         this.xServer = xServer;
-        this.inputStream = inputStream;
-        this.outputStream = outputStream;
+        this.connection = connection;
+        this.inputStream = connection.getInputStream();
+        this.outputStream = connection.getOutputStream();
 
         try (XLock lock = xServer.lockAll()) {
             resourceIDBase = xServer.resourceIDs.get();
@@ -37,7 +42,7 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     }
 
     public void registerAsOwnerOfResource(XResource resource) {
-        resources.add(resource);
+        resources.put(resource.id, resource);
     }
 
     public void setEventListenerForWindow(Window window, Bitmask eventMask) {
@@ -59,6 +64,7 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     }
 
     public boolean isInterestedIn(int eventId, Window window) {
+        if (!window.hasEventListenerFor(eventId)) return false;
         EventListener eventListener = eventListeners.get(window);
         return eventListener != null && eventListener.isInterestedIn(eventId);
     }
@@ -73,35 +79,51 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
 
     public void freeResources() {
         try (XLock lock = xServer.lockAll()) {
-            while (!resources.isEmpty()) {
-                XResource resource = resources.remove(resources.size()-1);
-                if (resource instanceof Window) {
-                    xServer.windowManager.destroyWindow(resource.id);
-                }
-                else if (resource instanceof Pixmap) {
-                    xServer.pixmapManager.freePixmap(resource.id);
-                }
-                else if (resource instanceof GraphicsContext) {
-                    xServer.graphicsContextManager.freeGraphicsContext(resource.id);
-                }
-                else if (resource instanceof Cursor) {
-                    xServer.cursorManager.freeCursor(resource.id);
-                }
+            xServer.windowManager.removeOnResourceLifecycleListener(this);
+            xServer.pixmapManager.removeOnResourceLifecycleListener(this);
+            xServer.graphicsContextManager.removeOnResourceLifecycleListener(this);
+            xServer.cursorManager.removeOnResourceLifecycleListener(this);
+            for (int i = 0; i < xServer.extensions.size(); i++) xServer.extensions.valueAt(i).onClientDisconnected(this);
+
+            int count = resources.size();
+            for (int i = count-1; i >= 0; i--) {
+                if (resources.valueAt(i) instanceof Window) xServer.windowManager.destroyWindow(resources.keyAt(i));
             }
+            for (int i = count-1; i >= 0; i--) {
+                if (resources.valueAt(i) instanceof Cursor) xServer.cursorManager.freeCursor(resources.keyAt(i));
+            }
+            for (int i = count-1; i >= 0; i--) {
+                if (resources.valueAt(i) instanceof GraphicsContext) xServer.graphicsContextManager.freeGraphicsContext(resources.keyAt(i));
+            }
+            for (int i = count-1; i >= 0; i--) {
+                if (resources.valueAt(i) instanceof Pixmap) xServer.pixmapManager.freePixmap(resources.keyAt(i));
+            }
+            resources.clear();
 
             while (!eventListeners.isEmpty()) {
                 int i = eventListeners.size()-1;
                 eventListeners.keyAt(i).removeEventListener(eventListeners.removeAt(i));
             }
 
-            xServer.windowManager.removeOnResourceLifecycleListener(this);
-            xServer.pixmapManager.removeOnResourceLifecycleListener(this);
-            xServer.graphicsContextManager.removeOnResourceLifecycleListener(this);
-            xServer.cursorManager.removeOnResourceLifecycleListener(this);
             xServer.resourceIDs.free(resourceIDBase);
         }
     }
 
+    public short[] getShortBuffer(int length) {
+        if (shortBuffer.length < length) shortBuffer = new short[Math.max(length, shortBuffer.length * 2)];
+        return shortBuffer;
+    }
+
+    public int getMotionHintGeneration() {
+        return motionHintGeneration;
+    }
+
+    // Only this client's own request thread bumps the generation and event senders just compare it,
+    // so QueryPointer can clear the hint while holding the shared locks.
+    public void clearMotionHint() {
+        motionHintGeneration++;
+    }
+
     public void generateSequenceNumber() {
         sequenceNumber++;
     }
@@ -152,7 +174,7 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     @Override
     public void onFreeResource(XResource resource) {
         if (resource instanceof Window) eventListeners.remove(resource);
-        resources.remove(resource);
+        if (isValidResourceId(resource.id)) resources.remove(resource.id);
     }
 
     public boolean isValidResourceId(int id) {
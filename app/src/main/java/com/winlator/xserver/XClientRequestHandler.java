@@ -7,19 +7,8 @@ import com.winlator.xconnector.RequestHandler;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
+import com.winlator.xserver.errors.BadImplementation;
 import com.winlator.xserver.errors.XRequestError;
-import com.winlator.xserver.extensions.Extension;
-import com.winlator.xserver.requests.AtomRequests;
-import com.winlator.xserver.requests.CursorRequests;
-import com.winlator.xserver.requests.DrawRequests;
-import com.winlator.xserver.requests.ExtensionRequests;
-import com.winlator.xserver.requests.FontRequests;
-import com.winlator.xserver.requests.GrabRequests;
-import com.winlator.xserver.requests.GraphicsContextRequests;
-import com.winlator.xserver.requests.KeyboardRequests;
-import com.winlator.xserver.requests.PixmapRequests;
-import com.winlator.xserver.requests.SelectionRequests;
-import com.winlator.xserver.requests.WindowRequests;
 
 import java.io.IOException;
 import java.nio.ByteOrder;
@@ -28,7 +17,6 @@ public class XClientRequestHandler implements RequestHandler {
     public static final byte RESPONSE_CODE_ERROR = 0;
     public static final byte RESPONSE_CODE_SUCCESS = 1;
     public static final int MAX_REQUEST_LENGTH = 65535;
-
     @Override
     public boolean handleRequest(Client client) throws IOException {
         XClient xClient = (XClient)client.getTag();
@@ -169,283 +157,16 @@ public class XClientRequestHandler implements RequestHandler {
         client.setRequestLength(requestLength);
 
         try {
-            switch (opcode) {
-                case ClientOpcodes.CREATE_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.INPUT_DEVICE, XServer.Lockable.CURSOR_MANAGER)) {
-                        WindowRequests.createWindow(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.CHANGE_WINDOW_ATTRIBUTES:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.CURSOR_MANAGER)) {
-                        WindowRequests.changeWindowAttributes(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.GET_WINDOW_ATTRIBUTES:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.getWindowAttributes(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.DESTROY_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
-                        WindowRequests.destroyWindow(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.DESTROY_SUB_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.INPUT_DEVICE)){
-                        WindowRequests.destroySubWindows(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.REPARENT_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.reparentWindow(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.MAP_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
-                        WindowRequests.mapWindow(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.MAP_SUB_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)){
-                        WindowRequests.mapSubWindows(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.UNMAP_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
-                        WindowRequests.unmapWindow(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.CONFIGURE_WINDOW:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
-                        WindowRequests.configureWindow(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.GET_GEOMETRY:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-                        WindowRequests.getGeometry(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.QUERY_TREE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.queryTree(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.INTERN_ATOM:
-                    AtomRequests.internAtom(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.GET_ATOM_NAME:
-                    AtomRequests.getAtomName(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.CHANGE_PROPERTY:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.changeProperty(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.DELETE_PROPERTY:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.deleteProperty(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.GET_PROPERTY:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.getProperty(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.SET_SELECTION_OWNER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        SelectionRequests.setSelectionOwner(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.GET_SELECTION_OWNER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        SelectionRequests.getSelectionOwner(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.SEND_EVENT:
-                    try (XLock lock = client.xServer.lockAll()) {
-                        WindowRequests.sendEvent(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.GRAB_POINTER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE, XServer.Lockable.CURSOR_MANAGER)) {
-                        GrabRequests.grabPointer(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.UNGRAB_POINTER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
-                        GrabRequests.ungrabPointer(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.QUERY_POINTER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
-                        WindowRequests.queryPointer(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.TRANSLATE_COORDINATES:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.translateCoordinates(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.WARP_POINTER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
-                        WindowRequests.warpPointer(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.SET_INPUT_FOCUS:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.setInputFocus(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.GET_INPUT_FOCUS:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        WindowRequests.getInputFocus(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.QUERY_KEYMAP:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                        outputStream.writeByte(RESPONSE_CODE_SUCCESS);
-                        outputStream.writeByte((byte) 0);
-                        outputStream.writeShort(client.getSequenceNumber());
-                        outputStream.writeInt(2);
-                        outputStream.writePad(32);
-                    }
-                    break;
-                case ClientOpcodes.OPEN_FONT:
-                    FontRequests.openFont(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.LIST_FONTS:
-                    FontRequests.listFonts(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.CREATE_PIXMAP:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-                        PixmapRequests.createPixmap(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.FREE_PIXMAP:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-                        PixmapRequests.freePixmap(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.CREATE_GC:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                        GraphicsContextRequests.createGC(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.CHANGE_GC:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                        GraphicsContextRequests.changeGC(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.SET_CLIP_RECTANGLES:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.FREE_GC:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                        GraphicsContextRequests.freeGC(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.COPY_AREA:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                        DrawRequests.copyArea(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.POLY_LINE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                        DrawRequests.polyLine(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.POLY_SEGMENT:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.POLY_RECTANGLE:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.POLY_FILL_RECTANGLE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                        DrawRequests.polyFillRectangle(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.PUT_IMAGE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                        DrawRequests.putImage(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.GET_IMAGE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-                        DrawRequests.getImage(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.CREATE_COLORMAP:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.FREE_COLORMAP:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.CREATE_CURSOR:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.CURSOR_MANAGER)) {
-                        CursorRequests.createCursor(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.CREATE_GLYPH_CURSOR:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.FREE_CURSOR:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.CURSOR_MANAGER)) {
-                        CursorRequests.freeCursor(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.QUERY_EXTENSION:
-                    ExtensionRequests.queryExtension(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.GET_KEYBOARD_MAPPING:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.INPUT_DEVICE)) {
-                        KeyboardRequests.getKeyboardMapping(client, inputStream, outputStream);
-                    }
-                    break;
-                case ClientOpcodes.BELL:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.SET_SCREEN_SAVER:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.GET_SCREEN_SAVER:
-                    WindowRequests.getScreenSaver(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.FORCE_SCREEN_SAVER:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.GET_MODIFIER_MAPPING:
-                    KeyboardRequests.getModifierMapping(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.NO_OPERATION:
-                    client.skipRequest();
-                    break;
-                case ClientOpcodes.GET_POINTER_MAPPING:
-                    CursorRequests.getPointerMapping(client, inputStream, outputStream);
-                    break;
-                case ClientOpcodes.GRAB_SERVER:
-                    try (XLock lock = client.xServer.lockAll()){
-                        client.xServer.setGrabbed(true, client);
-                        outputStream.writeSuccessReply(client.getSequenceNumber(), 0);
-                        Log.d("XClientRequestHandler", "X_GrabServer request handled successfully:" + outputStream.buffer.position());
-                    }
-                    break;
-                case ClientOpcodes.UNGRAB_SERVER:
-                    try (XLock lock = client.xServer.lockAll()){
-                        if (client.xServer.isGrabbedBy(client)) {
-                            client.xServer.setGrabbed(false, null);
-                        }
-                        outputStream.writeSuccessReply(client.getSequenceNumber(), 0);
-                        Log.d("XClientRequestHandler", "X_UngrabServer request handled successfully:" + outputStream.buffer.position());
-                    }
-                    break;
-                default:
-                    if (opcode < 0) {
-                        Extension extension = client.xServer.extensions.get(opcode);
-                        if (extension != null) extension.handleRequest(client, inputStream, outputStream);
-                    }
-                    else Log.d("XClientRequestHandler", "Unsupported opcode " + opcode);
-                    break;
+            RequestDescriptor descriptor = client.xServer.requestRegistry.get(opcode, requestData);
+            if (descriptor != null) {
+                client.xServer.requestRegistry.dispatch(descriptor, client, inputStream, outputStream);
+            }
+            else if (opcode < 0 && client.xServer.extensions.get(opcode) != null) {
+                throw new BadImplementation();
+            }
+            else {
+                Log.d("XClientRequestHandler", "Unsupported opcode " + opcode);
+                client.skipRequest();
             }
         }
         catch (XRequestError e) {
@@ -15,10 +15,16 @@ import com.winlator.xserver.extensions.SyncExtension;
 
 import java.nio.charset.Charset;
 import java.util.EnumMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class XServer {
     public enum Lockable {WINDOW_MANAGER, PIXMAP_MANAGER, DRAWABLE_MANAGER, GRAPHIC_CONTEXT_MANAGER, INPUT_DEVICE, CURSOR_MANAGER, SHMSEGMENT_MANAGER}
+    private static final Lockable[] LOCKABLES = Lockable.values();
+    private static final Pointer.Button[] POINTER_BUTTONS = Pointer.Button.values();
+    public static final int LOCK_ALL = (1 << LOCKABLES.length) - 1;
     public static final short VERSION = 11;
     public static final String VENDOR_NAME = "Elbrus Technologies, LLC";
     public static final Charset LATIN1_CHARSET = Charset.forName("latin1");
@@ -26,6 +32,13 @@ public class XServer {
     public final ScreenInfo screenInfo;
     public final PixmapManager pixmapManager;
     public final ResourceIDs resourceIDs = new ResourceIDs(128);
+    public final AtomTable atomTable = new AtomTable();
+    public final RequestRegistry requestRegistry = new RequestRegistry();
+    public final LockProfiler lockProfiler = new LockProfiler();
+    public final InputEventQueue inputEventQueue = new InputEventQueue(1024);
+    private final AtomicBoolean inputWakeupPending = new AtomicBoolean();
+    private final AtomicInteger injectedButtonMask = new AtomicInteger();
+    private volatile Runnable inputWakeup;
     public final GraphicsContextManager graphicsContextManager = new GraphicsContextManager();
     public final SelectionManager selectionManager;
     public final DrawableManager drawableManager;
@@ -41,7 +54,9 @@ public class XServer {
     private SHMSegmentManager shmSegmentManager;
     private GLRenderer renderer;
     private WinHandler winHandler;
-    private final EnumMap<Lockable, ReentrantLock> locks = new EnumMap<>(Lockable.class);
+    private final EnumMap<Lockable, ReentrantReadWriteLock> locks = new EnumMap<>(Lockable.class);
+    private final LockSet[] lockSets = new LockSet[1 << LOCKABLES.length];
+    private final LockSet[] sharedLockSets = new LockSet[1 << LOCKABLES.length];
     private boolean relativeMouseMovement = false;
     private boolean simulateTouchScreen = false;
 
@@ -49,12 +64,16 @@ public class XServer {
         Log.d("XServer", "Creating xServer " + screenInfo);
         this.screenInfo = screenInfo;
         cursorLocker = new CursorLocker(this);
-        for (Lockable lockable : Lockable.values()) locks.put(lockable, new ReentrantLock());
+        for (Lockable lockable : LOCKABLES) locks.put(lockable, new ReentrantReadWriteLock());
+        for (int i = 0; i < lockSets.length; i++) {
+            lockSets[i] = new LockSet(i, false);
+            sharedLockSets[i] = new LockSet(i, true);
+        }
 
         pixmapManager = new PixmapManager();
         drawableManager = new DrawableManager(this);
         cursorManager = new CursorManager(drawableManager);
-        windowManager = new WindowManager(screenInfo, drawableManager);
+        windowManager = new WindowManager(screenInfo, drawableManager, atomTable);
         selectionManager = new SelectionManager(windowManager);
         inputDeviceManager = new InputDeviceManager(this);
         grabManager = new GrabManager(this);
@@ -102,46 +121,74 @@ public class XServer {
         this.shmSegmentManager = shmSegmentManager;
     }
 
-    private class SingleXLock implements XLock {
-        private final ReentrantLock lock;
+    private class LockSet implements XLock {
+        private final Lock[] lockSet;
+        private final int[] lockIndices;
+
+        private LockSet(int lockMask, boolean shared) {
+            lockSet = new Lock[Integer.bitCount(lockMask)];
+            lockIndices = new int[lockSet.length];
+            for (int i = 0, j = 0; i < LOCKABLES.length; i++) {
+                if ((lockMask & (1 << i)) == 0) continue;
+                ReentrantReadWriteLock lock = locks.get(LOCKABLES[i]);
+                lockIndices[j] = i;
+                lockSet[j++] = shared ? lock.readLock() : lock.writeLock();
+            }
+        }
 
-        private SingleXLock(Lockable lockable) {
-            this.lock = locks.get(lockable);
-            lock.lock();
+        private XLock acquire() {
+            if (lockProfiler.isEnabled()) {
+                for (int i = 0; i < lockSet.length; i++) {
+                    long waitStartTime = lockProfiler.beginWait();
+                    lockSet[i].lock();
+                    lockProfiler.onAcquired(lockIndices[i], waitStartTime);
+                }
+            }
+            else for (Lock lock : lockSet) lock.lock();
+            return this;
         }
 
         @Override
         public void close() {
-            lock.unlock();
+            for (int i = lockSet.length - 1; i >= 0; i--) {
+                lockSet[i].unlock();
+                lockProfiler.onReleased(lockIndices[i]);
+            }
         }
     }
 
-    private class MultiXLock implements XLock {
-        private final Lockable[] lockables;
-
-        private MultiXLock(Lockable[] lockables) {
-            this.lockables = lockables;
-            for (Lockable lockable : lockables) locks.get(lockable).lock();
-        }
+    public static int lockMask(Lockable... lockables) {
+        int lockMask = 0;
+        for (Lockable lockable : lockables) lockMask |= 1 << lockable.ordinal();
+        return lockMask;
+    }
 
-        @Override
-        public void close() {
-            for (int i = lockables.length - 1; i >= 0; i--) {
-                locks.get(lockables[i]).unlock();
-            }
-        }
+    public XLock lock(int lockMask) {
+        return lockSets[lockMask].acquire();
     }
 
     public XLock lock(Lockable lockable) {
-        return new SingleXLock(lockable);
+        return lockSets[1 << lockable.ordinal()].acquire();
     }
 
     public XLock lock(Lockable... lockables) {
-        return new MultiXLock(lockables);
+        return lockSets[lockMask(lockables)].acquire();
+    }
+
+    public XLock lockShared(int lockMask) {
+        return sharedLockSets[lockMask].acquire();
+    }
+
+    public XLock lockShared(Lockable lockable) {
+        return sharedLockSets[1 << lockable.ordinal()].acquire();
+    }
+
+    public XLock lockShared(Lockable... lockables) {
+        return sharedLockSets[lockMask(lockables)].acquire();
     }
 
     public XLock lockAll() {
-        return new MultiXLock(Lockable.values());
+        return lockSets[LOCK_ALL].acquire();
     }
 
     public Extension getExtensionByName(String name) {
@@ -152,28 +199,31 @@ public class XServer {
         return null;
     }
 
+    public void setInputWakeup(Runnable inputWakeup) {
+        this.inputWakeup = inputWakeup;
+        if (inputWakeup == null) processQueuedInput();
+    }
+
     public void injectPointerMove(int x, int y) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setPosition(x, y);
-        }
+        injectInputEvent(InputEventQueue.POINTER_MOVE, x, y);
     }
 
     public void injectPointerMoveDelta(int dx, int dy) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setPosition(pointer.getX() + dx, pointer.getY() + dy);
-        }
+        injectInputEvent(InputEventQueue.POINTER_MOVE_DELTA, dx, dy);
     }
 
     public void injectPointerButtonPress(Pointer.Button buttonCode) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setButton(buttonCode, true);
-        }
+        injectedButtonMask.accumulateAndGet(buttonCode.flag(), (mask, flag) -> mask | flag);
+        injectInputEvent(InputEventQueue.POINTER_BUTTON_PRESS, buttonCode.ordinal(), 0);
     }
 
     public void injectPointerButtonRelease(Pointer.Button buttonCode) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setButton(buttonCode, false);
-        }
+        injectedButtonMask.accumulateAndGet(buttonCode.flag(), (mask, flag) -> mask & ~flag);
+        injectInputEvent(InputEventQueue.POINTER_BUTTON_RELEASE, buttonCode.ordinal(), 0);
+    }
+
+    public boolean isInjectedButtonPressed(Pointer.Button button) {
+        return (injectedButtonMask.get() & button.flag()) != 0;
     }
 
     public void injectKeyPress(XKeycode xKeycode) {
@@ -181,14 +231,54 @@ public class XServer {
     }
 
     public void injectKeyPress(XKeycode xKeycode, int keysym) {
+        injectInputEvent(InputEventQueue.KEY_PRESS, xKeycode.getId(), keysym);
+    }
+
+    public void injectKeyRelease(XKeycode xKeycode) {
+        injectInputEvent(InputEventQueue.KEY_RELEASE, xKeycode.getId(), 0);
+    }
+
+    private void injectInputEvent(byte type, int param1, int param2) {
+        Runnable inputWakeup = this.inputWakeup;
+        if (inputWakeup != null && inputEventQueue.offer(type, param1, param2)) {
+            if (inputWakeupPending.compareAndSet(false, true)) inputWakeup.run();
+            return;
+        }
+
         try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            keyboard.setKeyPress(xKeycode.getId(), keysym);
+            inputEventQueue.drain(this::handleInputEvent);
+            handleInputEvent(type, param1, param2);
         }
     }
 
-    public void injectKeyRelease(XKeycode xKeycode) {
+    public void processQueuedInput() {
+        inputWakeupPending.set(false);
+        if (inputEventQueue.isEmpty()) return;
         try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            keyboard.setKeyRelease(xKeycode.getId());
+            inputEventQueue.drain(this::handleInputEvent);
+        }
+    }
+
+    private void handleInputEvent(byte type, int param1, int param2) {
+        switch (type) {
+            case InputEventQueue.POINTER_MOVE:
+                pointer.setPosition(param1, param2);
+                break;
+            case InputEventQueue.POINTER_MOVE_DELTA:
+                pointer.setPosition(pointer.getX() + param1, pointer.getY() + param2);
+                break;
+            case InputEventQueue.POINTER_BUTTON_PRESS:
+                pointer.setButton(POINTER_BUTTONS[param1], true);
+                break;
+            case InputEventQueue.POINTER_BUTTON_RELEASE:
+                pointer.setButton(POINTER_BUTTONS[param1], false);
+                break;
+            case InputEventQueue.KEY_PRESS:
+                keyboard.setKeyPress((byte)param1, param2);
+                break;
+            case InputEventQueue.KEY_RELEASE:
+                keyboard.setKeyRelease((byte)param1);
+                break;
         }
     }
 
@@ -198,6 +288,7 @@ public class XServer {
         extensions.put(DRI3Extension.MAJOR_OPCODE, new DRI3Extension());
         extensions.put(PresentExtension.MAJOR_OPCODE, new PresentExtension());
         extensions.put(SyncExtension.MAJOR_OPCODE, new SyncExtension());
+        for (int i = 0; i < extensions.size(); i++) extensions.valueAt(i).registerRequests(requestRegistry);
     }
 
     public <T extends Extension> T getExtension(int opcode) {
@@ -13,6 +13,7 @@ public class XRequestError extends Exception  {
     private final int data;
 
     public XRequestError(int code, int data) {
+        super(null, null, false, false);
         this.code = (byte)code;
         this.data = data;
     }
@@ -1,8 +1,11 @@
 package com.winlator.xserver.events;
 
 import com.winlator.xconnector.XOutputStream;
+import com.winlator.xconnector.XStreamLock;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public abstract class Event {
     public static final int KEY_PRESS = 1<<0;
@@ -30,11 +33,44 @@ public abstract class Event {
     public static final int PROPERTY_CHANGE = 1<<22;
     public static final int COLORMAP_CHANGE = 1<<23;
     public static final int OWNER_GRAB_BUTTON = 1<<24;
+    private static final ThreadLocal<EncodeBuffer> encodeBuffer = ThreadLocal.withInitial(EncodeBuffer::new);
     protected final byte code;
 
+    private static class EncodeBuffer {
+        private final XOutputStream outputStream = new XOutputStream(64);
+        private Event event;
+
+        private EncodeBuffer() {
+            outputStream.setOnDeferFlushListener((outputStream) -> true);
+        }
+
+        private ByteBuffer encode(Event event, ByteOrder byteOrder) throws IOException {
+            if (this.event != event || outputStream.getByteOrder() != byteOrder) {
+                this.event = null;
+                outputStream.buffer.clear();
+                outputStream.setByteOrder(byteOrder);
+                event.send((short)0, outputStream);
+                outputStream.buffer.flip();
+                this.event = event;
+            }
+            return outputStream.buffer;
+        }
+    }
+
     public Event(int code) {
         this.code = (byte)code;
     }
 
     public abstract void send(short sequenceNumber, XOutputStream outputStream) throws IOException;
+
+    public void sendEncoded(short sequenceNumber, XOutputStream outputStream) throws IOException {
+        ByteBuffer data = encodeBuffer.get().encode(this, outputStream.getByteOrder());
+        try (XStreamLock lock = lock(outputStream)) {
+            outputStream.writeEvent(data, sequenceNumber);
+        }
+    }
+
+    protected XStreamLock lock(XOutputStream outputStream) {
+        return outputStream.lock();
+    }
 }
\ No newline at end of file
@@ -1,10 +1,22 @@
 package com.winlator.xserver.events;
 
+import com.winlator.xconnector.XOutputStream;
+import com.winlator.xconnector.XStreamLock;
 import com.winlator.xserver.Bitmask;
 import com.winlator.xserver.Window;
 
 public class MotionNotify extends InputDeviceEvent {
-    public MotionNotify(boolean detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state) {
-        super(6, (byte)(detail ? 1 : 0), root, event, child, rootX, rootY, eventX, eventY, state);
+    private final boolean hint;
+    private final int eventId;
+
+    public MotionNotify(boolean hint, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state) {
+        super(6, (byte)(hint ? 1 : 0), root, event, child, rootX, rootY, eventX, eventY, state);
+        this.hint = hint;
+        this.eventId = event.id;
+    }
+
+    @Override
+    protected XStreamLock lock(XOutputStream outputStream) {
+        return hint ? outputStream.lock() : outputStream.lockCoalesced(eventId);
     }
 }
@@ -19,4 +19,9 @@ public class RawEvent extends Event {
             outputStream.write(data);
         }
     }
+
+    @Override
+    public void sendEncoded(short sequenceNumber, XOutputStream outputStream) throws IOException {
+        send(sequenceNumber, outputStream);
+    }
 }
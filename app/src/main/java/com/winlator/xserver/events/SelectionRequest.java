@@ -0,0 +1,42 @@
+package com.winlator.xserver.events;
+
+import com.winlator.xconnector.XOutputStream;
+import com.winlator.xconnector.XStreamLock;
+import com.winlator.xserver.Window;
+
+import java.io.IOException;
+
+public class SelectionRequest extends Event {
+    private final int timestamp;
+    private final Window owner;
+    private final Window requestor;
+    private final int selection;
+    private final int target;
+    private final int property;
+
+    public SelectionRequest(int timestamp, Window owner, Window requestor, int selection, int target, int property) {
+        super(30);
+        this.timestamp = timestamp;
+        this.owner = owner;
+        this.requestor = requestor;
+        this.selection = selection;
+        this.target = target;
+        this.property = property;
+    }
+
+    @Override
+    public void send(short sequenceNumber, XOutputStream outputStream) throws IOException {
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeByte(code);
+            outputStream.writeByte((byte)0);
+            outputStream.writeShort(sequenceNumber);
+            outputStream.writeInt(timestamp);
+            outputStream.writeInt(owner.id);
+            outputStream.writeInt(requestor.id);
+            outputStream.writeInt(selection);
+            outputStream.writeInt(target);
+            outputStream.writeInt(property);
+            outputStream.writePad(4);
+        }
+    }
+}
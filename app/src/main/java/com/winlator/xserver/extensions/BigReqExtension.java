@@ -5,6 +5,8 @@ import static com.winlator.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
+import com.winlator.xserver.RequestDescriptor;
+import com.winlator.xserver.RequestRegistry;
 import com.winlator.xserver.XClient;
 
 import java.io.IOException;
@@ -33,8 +35,7 @@ public class BigReqExtension implements Extension {
         return 0;
     }
 
-    @Override
-    public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException {
+    private static void enable(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException {
         try (XStreamLock lock = outputStream.lock()) {
             outputStream.writeByte(RESPONSE_CODE_SUCCESS);
             outputStream.writeByte((byte)0);
@@ -44,4 +45,9 @@ public class BigReqExtension implements Extension {
             outputStream.writePad(20);
         }
     }
+
+    @Override
+    public void registerRequests(RequestRegistry registry) {
+        registry.register(new RequestDescriptor("BigReqEnable", MAJOR_OPCODE, (byte)0, 0, RequestDescriptor.FLAG_READ_ONLY | RequestDescriptor.FLAG_REPLY, BigReqExtension::enable));
+    }
 }
@@ -16,14 +16,14 @@ import com.winlator.xconnector.XStreamLock;
 import com.winlator.xenvironment.components.VortekRendererComponent;
 import com.winlator.xserver.Drawable;
 import com.winlator.xserver.Pixmap;
+import com.winlator.xserver.RequestDescriptor;
+import com.winlator.xserver.RequestRegistry;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.XClient;
-import com.winlator.xserver.XLock;
 import com.winlator.xserver.XServer;
 import com.winlator.xserver.errors.BadAlloc;
 import com.winlator.xserver.errors.BadDrawable;
 import com.winlator.xserver.errors.BadIdChoice;
-import com.winlator.xserver.errors.BadImplementation;
 import com.winlator.xserver.errors.BadPixmap;
 import com.winlator.xserver.errors.BadWindow;
 import com.winlator.xserver.errors.XRequestError;
@@ -175,29 +175,10 @@ public class DRI3Extension implements Extension {
     }
 
     @Override
-    public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
-        int opcode = client.getRequestData();
-        switch (opcode) {
-            case ClientOpcodes.QUERY_VERSION :
-                queryVersion(client, inputStream, outputStream);
-                break;
-            case ClientOpcodes.OPEN :
-                try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
-                    open(client, inputStream, outputStream);
-                }
-                break;
-            case ClientOpcodes.PIXMAP_FROM_BUFFER:
-                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-                    pixmapFromBuffer(client, inputStream, outputStream);
-                }
-                break;
-            case ClientOpcodes.PIXMAP_FROM_BUFFERS:
-                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-                    pixmapFromBuffers(client, inputStream, outputStream);
-                }
-                break;
-            default:
-                throw new BadImplementation();
-        }
+    public void registerRequests(RequestRegistry registry) {
+        registry.register(new RequestDescriptor("DRI3QueryVersion", MAJOR_OPCODE, ClientOpcodes.QUERY_VERSION, 0, RequestDescriptor.FLAG_REPLY, this::queryVersion));
+        registry.register(new RequestDescriptor("DRI3Open", MAJOR_OPCODE, ClientOpcodes.OPEN, XServer.lockMask(XServer.Lockable.DRAWABLE_MANAGER), RequestDescriptor.FLAG_REPLY, this::open));
+        registry.register(new RequestDescriptor("DRI3PixmapFromBuffer", MAJOR_OPCODE, ClientOpcodes.PIXMAP_FROM_BUFFER, XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER), 0, this::pixmapFromBuffer));
+        registry.register(new RequestDescriptor("DRI3PixmapFromBuffers", MAJOR_OPCODE, ClientOpcodes.PIXMAP_FROM_BUFFERS, XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER), 0, this::pixmapFromBuffers));
     }
 }
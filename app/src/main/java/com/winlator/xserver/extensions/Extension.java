@@ -1,11 +1,7 @@
 package com.winlator.xserver.extensions;
 
-import com.winlator.xconnector.XInputStream;
-import com.winlator.xconnector.XOutputStream;
+import com.winlator.xserver.RequestRegistry;
 import com.winlator.xserver.XClient;
-import com.winlator.xserver.errors.XRequestError;
-
-import java.io.IOException;
 
 public interface Extension {
     String getName();
@@ -16,5 +12,7 @@ public interface Extension {
 
     byte getFirstEventId();
 
-    void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError;
+    void registerRequests(RequestRegistry registry);
+
+    default void onClientDisconnected(XClient client) {}
 }
@@ -7,12 +7,12 @@ import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
 import com.winlator.xserver.Drawable;
 import com.winlator.xserver.GraphicsContext;
+import com.winlator.xserver.RequestDescriptor;
+import com.winlator.xserver.RequestRegistry;
 import com.winlator.xserver.XClient;
-import com.winlator.xserver.XLock;
 import com.winlator.xserver.XServer;
 import com.winlator.xserver.errors.BadDrawable;
 import com.winlator.xserver.errors.BadGraphicsContext;
-import com.winlator.xserver.errors.BadImplementation;
 import com.winlator.xserver.errors.BadSHMSegment;
 import com.winlator.xserver.errors.XRequestError;
 
@@ -107,29 +107,10 @@ public class MITSHMExtension implements Extension {
     }
 
     @Override
-    public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
-        int opcode = client.getRequestData();
-        switch (opcode) {
-            case ClientOpcodes.QUERY_VERSION :
-                queryVersion(client, inputStream, outputStream);
-                break;
-            case ClientOpcodes.ATTACH :
-                try (XLock lock = client.xServer.lock(XServer.Lockable.SHMSEGMENT_MANAGER)) {
-                    attach(client, inputStream, outputStream);
-                }
-                break;
-            case ClientOpcodes.DETACH :
-                try (XLock lock = client.xServer.lock(XServer.Lockable.SHMSEGMENT_MANAGER)) {
-                    detach(client, inputStream, outputStream);
-                }
-                break;
-            case ClientOpcodes.PUT_IMAGE :
-                try (XLock lock = client.xServer.lock(XServer.Lockable.SHMSEGMENT_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
-                    putImage(client, inputStream, outputStream);
-                }
-                break;
-            default:
-                throw new BadImplementation();
-        }
+    public void registerRequests(RequestRegistry registry) {
+        registry.register(new RequestDescriptor("ShmQueryVersion", MAJOR_OPCODE, ClientOpcodes.QUERY_VERSION, 0, RequestDescriptor.FLAG_REPLY, MITSHMExtension::queryVersion));
+        registry.register(new RequestDescriptor("ShmAttach", MAJOR_OPCODE, ClientOpcodes.ATTACH, XServer.lockMask(XServer.Lockable.SHMSEGMENT_MANAGER), 0, MITSHMExtension::attach));
+        registry.register(new RequestDescriptor("ShmDetach", MAJOR_OPCODE, ClientOpcodes.DETACH, XServer.lockMask(XServer.Lockable.SHMSEGMENT_MANAGER), 0, MITSHMExtension::detach));
+        registry.register(new RequestDescriptor("ShmPutImage", MAJOR_OPCODE, ClientOpcodes.PUT_IMAGE, XServer.lockMask(XServer.Lockable.SHMSEGMENT_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER), 0, MITSHMExtension::putImage));
     }
 }
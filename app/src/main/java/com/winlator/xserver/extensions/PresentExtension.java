@@ -2,8 +2,7 @@ package com.winlator.xserver.extensions;
 
 import static com.winlator.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 
-import android.util.SparseArray;
-
+import com.winlator.core.IntObjectMap;
 import com.winlator.renderer.GPUImage;
 import com.winlator.renderer.Texture;
 import com.winlator.widget.XServerView;
@@ -13,12 +12,13 @@ import com.winlator.xconnector.XStreamLock;
 import com.winlator.xenvironment.components.VortekRendererComponent;
 import com.winlator.xserver.Bitmask;
 import com.winlator.xserver.Drawable;
+import com.winlator.xserver.LockProfiler;
 import com.winlator.xserver.Pixmap;
+import com.winlator.xserver.RequestDescriptor;
+import com.winlator.xserver.RequestRegistry;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.XClient;
-import com.winlator.xserver.XLock;
 import com.winlator.xserver.XServer;
-import com.winlator.xserver.errors.BadImplementation;
 import com.winlator.xserver.errors.BadMatch;
 import com.winlator.xserver.errors.BadPixmap;
 import com.winlator.xserver.errors.BadWindow;
@@ -34,7 +34,7 @@ public class PresentExtension implements Extension {
     private static final int FAKE_INTERVAL = 1000000 / 60;
     public enum Kind {PIXMAP, MSC_NOTIFY}
     public enum Mode {COPY, FLIP, SKIP}
-    private final SparseArray<Event> events = new SparseArray<>();
+    private final IntObjectMap<Event> events = new IntObjectMap<>();
     private SyncExtension syncExtension;
 
     private static abstract class ClientOpcodes {
@@ -109,6 +109,7 @@ public class PresentExtension implements Extension {
     }
 
     private void presentPixmap(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        if (syncExtension == null) syncExtension = client.xServer.getExtension(SyncExtension.MAJOR_OPCODE);
         int windowId = inputStream.readInt();
         int pixmapId = inputStream.readInt();
         int serial = inputStream.readInt();
@@ -131,10 +132,18 @@ public class PresentExtension implements Extension {
         long ust = System.nanoTime() / 1000;
         long msc = ust / FAKE_INTERVAL;
 
+        LockProfiler lockProfiler = client.xServer.lockProfiler;
+        long waitStartTime = lockProfiler.beginWait();
         synchronized (content.renderLock) {
-            content.copyArea((short)0, (short)0, xOff, yOff, pixmap.drawable.width, pixmap.drawable.height, pixmap.drawable);
-            sendIdleNotify(window, pixmap, serial, idleFence);
-            sendCompleteNotify(window, serial, Kind.PIXMAP, Mode.COPY, ust, msc);
+            lockProfiler.onAcquired(LockProfiler.RENDER_LOCK, waitStartTime);
+            try {
+                content.copyArea((short)0, (short)0, xOff, yOff, pixmap.drawable.width, pixmap.drawable.height, pixmap.drawable);
+                sendIdleNotify(window, pixmap, serial, idleFence);
+                sendCompleteNotify(window, serial, Kind.PIXMAP, Mode.COPY, ust, msc);
+            }
+            finally {
+                lockProfiler.onReleased(LockProfiler.RENDER_LOCK);
+            }
         }
     }
 
@@ -177,26 +186,9 @@ public class PresentExtension implements Extension {
     }
 
     @Override
-    public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
-        int opcode = client.getRequestData();
-        if (syncExtension == null) syncExtension = client.xServer.getExtension(SyncExtension.MAJOR_OPCODE);
-
-        switch (opcode) {
-            case ClientOpcodes.QUERY_VERSION :
-                queryVersion(client, inputStream, outputStream);
-                break;
-            case ClientOpcodes.PRESENT_PIXMAP:
-                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER)) {
-                    presentPixmap(client, inputStream, outputStream);
-                }
-                break;
-            case ClientOpcodes.SELECT_INPUT:
-                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
-                    selectInput(client, inputStream, outputStream);
-                }
-                break;
-            default:
-                throw new BadImplementation();
-        }
+    public void registerRequests(RequestRegistry registry) {
+        registry.register(new RequestDescriptor("PresentQueryVersion", MAJOR_OPCODE, ClientOpcodes.QUERY_VERSION, 0, RequestDescriptor.FLAG_REPLY, PresentExtension::queryVersion));
+        registry.register(new RequestDescriptor("PresentPixmap", MAJOR_OPCODE, ClientOpcodes.PRESENT_PIXMAP, XServer.lockMask(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER), 0, this::presentPixmap));
+        registry.register(new RequestDescriptor("PresentSelectInput", MAJOR_OPCODE, ClientOpcodes.SELECT_INPUT, XServer.lockMask(XServer.Lockable.WINDOW_MANAGER), 0, this::selectInput));
     }
 }
@@ -1,21 +1,39 @@
 package com.winlator.xserver.extensions;
 
-import android.util.SparseBooleanArray;
-
+import com.winlator.core.IntObjectMap;
+import com.winlator.xconnector.Client;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
+import com.winlator.xserver.RequestDescriptor;
+import com.winlator.xserver.RequestRegistry;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.errors.BadFence;
 import com.winlator.xserver.errors.BadIdChoice;
-import com.winlator.xserver.errors.BadImplementation;
 import com.winlator.xserver.errors.BadMatch;
 import com.winlator.xserver.errors.XRequestError;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 public class SyncExtension implements Extension {
     public static final byte MAJOR_OPCODE = -104;
-    private final SparseBooleanArray fences = new SparseBooleanArray();
+    private final IntObjectMap<Boolean> fences = new IntObjectMap<>();
+    private final ArrayList<FenceWaiter> waiters = new ArrayList<>();
+
+    private static class FenceWaiter {
+        private final Client connection;
+        private final int[] ids;
+
+        private FenceWaiter(Client connection, int[] ids) {
+            this.connection = connection;
+            this.ids = ids;
+        }
+
+        private boolean isWaitingFor(int id) {
+            for (int waitId : ids) if (waitId == id) return true;
+            return false;
+        }
+    }
 
     private static abstract class ClientOpcodes {
         private static final byte CREATE_FENCE = 14;
@@ -47,38 +65,102 @@ public class SyncExtension implements Extension {
 
     public void setTriggered(int id) {
         synchronized (fences) {
-            if (fences.indexOfKey(id) >= 0) fences.put(id, true);
+            if (fences.containsKey(id)) {
+                fences.put(id, true);
+                wakeWaiters(id);
+            }
         }
     }
 
-    private void createFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+    private void wakeWaiters(int id) {
+        for (int i = waiters.size()-1; i >= 0; i--) {
+            FenceWaiter waiter = waiters.get(i);
+            if (waiter.isWaitingFor(id)) {
+                waiters.remove(i);
+                waiter.connection.resume();
+            }
+        }
+        fences.notifyAll();
+    }
+
+    public int getWaiterCount() {
         synchronized (fences) {
-            inputStream.skip(4);
-            int id = inputStream.readInt();
+            return waiters.size();
+        }
+    }
 
-            if (fences.indexOfKey(id) >= 0) throw new BadIdChoice(id);
+    @Override
+    public void onClientDisconnected(XClient client) {
+        removeWaiters(client.connection);
+    }
 
-            boolean initiallyTriggered = inputStream.readByte() == 1;
-            inputStream.skip(3);
+    void removeWaiters(Client connection) {
+        synchronized (fences) {
+            for (int i = waiters.size()-1; i >= 0; i--) {
+                if (waiters.get(i).connection == connection) waiters.remove(i);
+            }
+        }
+    }
 
+    void createFence(int id, boolean initiallyTriggered) throws BadIdChoice {
+        synchronized (fences) {
+            if (fences.containsKey(id)) throw new BadIdChoice(id);
             fences.put(id, initiallyTriggered);
         }
     }
 
-    private void triggerFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+    void triggerFence(int id) throws BadFence {
         synchronized (fences) {
-            int id = inputStream.readInt();
-            if (fences.indexOfKey(id) < 0) throw new BadFence(id);
+            if (!fences.containsKey(id)) throw new BadFence(id);
             fences.put(id, true);
+            wakeWaiters(id);
+        }
+    }
+
+    void destroyFence(int id) throws BadFence {
+        synchronized (fences) {
+            if (fences.remove(id) == null) throw new BadFence(id);
+            wakeWaiters(id);
         }
     }
 
+    void awaitFence(Client connection, int[] ids) throws BadFence {
+        synchronized (fences) {
+            if (isAnyTriggered(ids)) return;
+            if (connection.suspend()) {
+                waiters.add(new FenceWaiter(connection, ids));
+                return;
+            }
+
+            do {
+                try {
+                    fences.wait();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+            while (!isAnyTriggered(ids));
+        }
+    }
+
+    private void createFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        inputStream.skip(4);
+        int id = inputStream.readInt();
+        boolean initiallyTriggered = inputStream.readByte() == 1;
+        inputStream.skip(3);
+        createFence(id, initiallyTriggered);
+    }
+
+    private void triggerFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        triggerFence(inputStream.readInt());
+    }
+
     private void resetFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         synchronized (fences) {
             int id = inputStream.readInt();
-            if (fences.indexOfKey(id) < 0) throw new BadFence(id);
-
-            boolean triggered = fences.get(id);
+            Boolean triggered = fences.get(id);
+            if (triggered == null) throw new BadFence(id);
             if (!triggered) throw new BadMatch();
 
             fences.put(id, false);
@@ -86,57 +168,37 @@ public class SyncExtension implements Extension {
     }
 
     private void destroyFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
-        synchronized (fences) {
-            int id = inputStream.readInt();
-            if (fences.indexOfKey(id) < 0) throw new BadFence(id);
-            fences.delete(id);
-        }
+        destroyFence(inputStream.readInt());
     }
 
     private void awaitFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
-        synchronized (fences) {
-            int length = client.getRemainingRequestLength();
-            int[] ids = new int[length / 4];
-            int i = 0;
+        int length = client.getRemainingRequestLength();
+        int[] ids = new int[length / 4];
+        int i = 0;
 
-            while (length != 0) {
-                ids[i++] = inputStream.readInt();
-                length -= 4;
-            }
+        while (length != 0) {
+            ids[i++] = inputStream.readInt();
+            length -= 4;
+        }
 
-            boolean anyTriggered = false;
-            do {
-                for (int id : ids) {
-                    if (fences.indexOfKey(id) < 0) throw new BadFence(id);
-                    anyTriggered = fences.get(id);
-                    if (anyTriggered) break;
-                }
-            }
-            while (!anyTriggered);
+        awaitFence(client.connection, ids);
+    }
+
+    private boolean isAnyTriggered(int[] ids) throws BadFence {
+        for (int id : ids) {
+            Boolean triggered = fences.get(id);
+            if (triggered == null) throw new BadFence(id);
+            if (triggered) return true;
         }
+        return false;
     }
 
     @Override
-    public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
-        int opcode = client.getRequestData();
-        switch (opcode) {
-            case ClientOpcodes.CREATE_FENCE :
-                createFence(client, inputStream, outputStream);
-                break;
-            case ClientOpcodes.TRIGGER_FENCE:
-                triggerFence(client, inputStream, outputStream);
-                break;
-            case ClientOpcodes.RESET_FENCE:
-                resetFence(client, inputStream, outputStream);
-                break;
-            case ClientOpcodes.DESTROY_FENCE:
-                destroyFence(client, inputStream, outputStream);
-                break;
-            case ClientOpcodes.AWAIT_FENCE:
-                awaitFence(client, inputStream, outputStream);
-                break;
-            default:
-                throw new BadImplementation();
-        }
+    public void registerRequests(RequestRegistry registry) {
+        registry.register(new RequestDescriptor("SyncCreateFence", MAJOR_OPCODE, ClientOpcodes.CREATE_FENCE, 0, 0, this::createFence));
+        registry.register(new RequestDescriptor("SyncTriggerFence", MAJOR_OPCODE, ClientOpcodes.TRIGGER_FENCE, 0, 0, this::triggerFence));
+        registry.register(new RequestDescriptor("SyncResetFence", MAJOR_OPCODE, ClientOpcodes.RESET_FENCE, 0, 0, this::resetFence));
+        registry.register(new RequestDescriptor("SyncDestroyFence", MAJOR_OPCODE, ClientOpcodes.DESTROY_FENCE, 0, 0, this::destroyFence));
+        registry.register(new RequestDescriptor("SyncAwaitFence", MAJOR_OPCODE, ClientOpcodes.AWAIT_FENCE, 0, 0, this::awaitFence));
     }
 }
@@ -5,7 +5,7 @@ import static com.winlator.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
-import com.winlator.xserver.Atom;
+import com.winlator.xserver.AtomTable;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.errors.BadAtom;
 import com.winlator.xserver.errors.XRequestError;
@@ -18,7 +18,8 @@ public abstract class AtomRequests {
         short length = inputStream.readShort();
         inputStream.skip(2);
         String name = inputStream.readString8(length);
-        int id = onlyIfExists ? Atom.getId(name) : Atom.internAtom(name);
+        AtomTable atomTable = client.xServer.atomTable;
+        int id = onlyIfExists ? atomTable.getId(name) : atomTable.internAtom(name);
         if (id < 0) throw new BadAtom(id);
 
         try (XStreamLock lock = outputStream.lock()) {
@@ -33,10 +34,8 @@ public abstract class AtomRequests {
 
     public static void getAtomName(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError, IOException {
         int id = inputStream.readInt();
-        if (id < 0) {
-            throw new BadAtom(id);
-        }
-        String name = Atom.getName(id);
+        String name = client.xServer.atomTable.getName(id);
+        if (name == null) throw new BadAtom(id);
         short length = (short) name.length();
         try (XStreamLock lock = outputStream.lock()){
             outputStream.writeByte(RESPONSE_CODE_SUCCESS);
@@ -2,6 +2,7 @@ package com.winlator.xserver.requests;
 
 import static com.winlator.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 
+import com.winlator.xconnector.DirectBufferPool;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
@@ -19,9 +20,11 @@ import java.nio.ByteBuffer;
 public abstract class DrawRequests {
     public enum Format {BITMAP, XY_PIXMAP, Z_PIXMAP}
     private enum CoordinateMode {ORIGIN, PREVIOUS}
+    private static final Format[] FORMATS = Format.values();
+    private static final CoordinateMode[] COORDINATE_MODES = CoordinateMode.values();
 
     public static void putImage(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
-        Format format = Format.values()[client.getRequestData()];
+        Format format = FORMATS[client.getRequestData()];
         int drawableId = inputStream.readInt();
         int gcId = inputStream.readInt();
         short width = inputStream.readShort();
@@ -65,7 +68,7 @@ public abstract class DrawRequests {
     }
 
     public static void getImage(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
-        Format format = Format.values()[client.getRequestData()];
+        Format format = FORMATS[client.getRequestData()];
         int drawableId = inputStream.readInt();
         short x = inputStream.readShort();
         short y = inputStream.readShort();
@@ -91,6 +94,9 @@ public abstract class DrawRequests {
             outputStream.write(data);
             if ((-length & 3) > 0) outputStream.writePad(-length & 3);
         }
+        finally {
+            DirectBufferPool.release(data);
+        }
     }
 
     public static void copyArea(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
@@ -119,7 +125,7 @@ public abstract class DrawRequests {
     }
 
     public static void polyLine(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
-        CoordinateMode coordinateMode = CoordinateMode.values()[client.getRequestData()];
+        CoordinateMode coordinateMode = COORDINATE_MODES[client.getRequestData()];
         int drawableId = inputStream.readInt();
         int gcId = inputStream.readInt();
 
@@ -129,17 +135,15 @@ public abstract class DrawRequests {
         if (graphicsContext == null) throw new BadGraphicsContext(gcId);
         int length = client.getRemainingRequestLength();
 
-        short[] points = new short[length / 2];
-        int i = 0;
-        while (length != 0) {
-            points[i++] = inputStream.readShort();
-            points[i++] = inputStream.readShort();
-            length -= 4;
+        if (coordinateMode != CoordinateMode.ORIGIN || graphicsContext.getLineWidth() <= 0 || length < 4) {
+            inputStream.skip(length);
+            return;
         }
 
-        if (coordinateMode == CoordinateMode.ORIGIN && graphicsContext.getLineWidth() > 0) {
-            drawable.drawLines(graphicsContext.getForeground(), graphicsContext.getLineWidth(), points);
-        }
+        int count = length / 2;
+        short[] points = client.getShortBuffer(count);
+        for (int i = 0; i < count; i++) points[i] = inputStream.readShort();
+        drawable.drawLines(graphicsContext.getForeground(), graphicsContext.getLineWidth(), points, count / 2);
     }
 
     public static void polyFillRectangle(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
@@ -152,13 +156,9 @@ public abstract class DrawRequests {
         if (graphicsContext == null) throw new BadGraphicsContext(gcId);
         int length = client.getRemainingRequestLength();
 
-        while (length != 0) {
-            short x = inputStream.readShort();
-            short y = inputStream.readShort();
-            short width = inputStream.readShort();
-            short height = inputStream.readShort();
-            drawable.fillRect(x, y, width, height, graphicsContext.getBackground());
-            length -= 8;
-        }
+        int count = length / 2;
+        short[] rects = client.getShortBuffer(count);
+        for (int i = 0; i < count; i++) rects[i] = inputStream.readShort();
+        drawable.fillRects(rects, count / 4, graphicsContext.getBackground());
     }
 }
\ No newline at end of file
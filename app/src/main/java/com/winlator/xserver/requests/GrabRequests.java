@@ -63,4 +63,14 @@ public abstract class GrabRequests {
         inputStream.skip(4);
         client.xServer.grabManager.deactivatePointerGrab();
     }
+
+    public static void grabServer(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException {
+        client.xServer.setGrabbed(true, client);
+        outputStream.writeSuccessReply(client.getSequenceNumber(), 0);
+    }
+
+    public static void ungrabServer(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException {
+        if (client.xServer.isGrabbedBy(client)) client.xServer.setGrabbed(false, null);
+        outputStream.writeSuccessReply(client.getSequenceNumber(), 0);
+    }
 }
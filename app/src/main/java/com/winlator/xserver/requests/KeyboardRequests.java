@@ -44,4 +44,14 @@ public abstract class KeyboardRequests {
             outputStream.writePad(8);
         }
     }
-}
\ No newline at end of file
+
+    public static void queryKeymap(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException {
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeByte(RESPONSE_CODE_SUCCESS);
+            outputStream.writeByte((byte)0);
+            outputStream.writeShort(client.getSequenceNumber());
+            outputStream.writeInt(2);
+            outputStream.writePad(32);
+        }
+    }
+}
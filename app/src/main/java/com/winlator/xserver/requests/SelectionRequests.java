@@ -5,7 +5,6 @@ import static com.winlator.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
-import com.winlator.xserver.Atom;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.errors.BadAtom;
@@ -22,14 +21,30 @@ public abstract class SelectionRequests {
 
         Window owner = client.xServer.windowManager.getWindow(windowId);
         if (owner == null) throw new BadWindow(windowId);
-        if (!Atom.isValid(atom)) throw new BadAtom(atom);
+        if (!client.xServer.atomTable.isValid(atom)) throw new BadAtom(atom);
 
         client.xServer.selectionManager.setSelection(atom, owner, client, timestamp);
     }
 
+    public static void convertSelection(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        int windowId = inputStream.readInt();
+        int atom = inputStream.readInt();
+        int target = inputStream.readInt();
+        int property = inputStream.readInt();
+        int timestamp = inputStream.readInt();
+
+        Window requestor = client.xServer.windowManager.getWindow(windowId);
+        if (requestor == null) throw new BadWindow(windowId);
+        if (!client.xServer.atomTable.isValid(atom)) throw new BadAtom(atom);
+        if (!client.xServer.atomTable.isValid(target)) throw new BadAtom(target);
+        if (property != 0 && !client.xServer.atomTable.isValid(property)) throw new BadAtom(property);
+
+        client.xServer.selectionManager.convertSelection(atom, requestor, client, target, property, timestamp);
+    }
+
     public static void getSelectionOwner(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         int atom = inputStream.readInt();
-        if (!Atom.isValid(atom)) throw new BadAtom(atom);
+        if (!client.xServer.atomTable.isValid(atom)) throw new BadAtom(atom);
         Window owner = client.xServer.selectionManager.getSelection(atom).owner;
 
         try (XStreamLock lock = outputStream.lock()) {
@@ -29,6 +29,8 @@ import java.io.IOException;
 import java.util.List;
 
 public abstract class WindowRequests {
+    private static final Property.Mode[] PROPERTY_MODES = Property.Mode.values();
+
     public static void createWindow(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
         byte depth = client.getRequestData();
         int windowId = inputStream.readInt();
@@ -171,7 +173,7 @@ public abstract class WindowRequests {
     }
 
     public static void changeProperty(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
-        Property.Mode mode = Property.Mode.values()[client.getRequestData()];
+        Property.Mode mode = PROPERTY_MODES[client.getRequestData()];
         int windowId = inputStream.readInt();
         Window window = client.xServer.windowManager.getWindow(windowId);
         if (window == null) throw new BadWindow(windowId);
@@ -200,7 +202,9 @@ public abstract class WindowRequests {
         int windowId = inputStream.readInt();
         Window window = client.xServer.windowManager.getWindow(windowId);
         if (window == null) throw new BadWindow(windowId);
-        window.removeProperty(inputStream.readInt());
+        int atom = inputStream.readInt();
+        window.removeProperty(atom);
+        client.xServer.windowManager.triggerOnDeleteWindowProperty(window, atom);
     }
 
     public static void getProperty(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
@@ -239,11 +243,12 @@ public abstract class WindowRequests {
                 outputStream.writePad(12);
             }
             else {
-                byte[] data = property.data.array();
-                int offset = longOffset * 4;
-                int length = Math.min(data.length - offset, longLength * 4);
-                if (length < 0) throw new BadValue(longOffset);
-                bytesAfter = data.length - (offset + length);
+                int size = property.size();
+                long byteOffset = (longOffset & 0xffffffffL) * 4;
+                if (byteOffset > size) throw new BadValue(longOffset);
+                int offset = (int)byteOffset;
+                int length = (int)Math.min(size - offset, (longLength & 0xffffffffL) * 4);
+                bytesAfter = size - (offset + length);
 
                 outputStream.writeByte(RESPONSE_CODE_SUCCESS);
                 outputStream.writeByte(property.format.value);
@@ -253,13 +258,14 @@ public abstract class WindowRequests {
                 outputStream.writeInt(bytesAfter);
                 outputStream.writeInt(length / (property.format.value / 8));
                 outputStream.writePad(12);
-                outputStream.write(data, offset, length);
+                property.write(outputStream, offset, length);
                 if ((-length & 3) > 0) outputStream.writePad(-length & 3);
             }
         }
 
         if (delete && property != null && bytesAfter == 0) {
             window.removeProperty(atom);
+            client.xServer.windowManager.triggerOnDeleteWindowProperty(window, atom);
         }
     }
 
@@ -271,6 +277,7 @@ public abstract class WindowRequests {
         short rootY = client.xServer.pointer.getClampedY();
         Window child = window.getChildByCoords(rootX, rootY);
         short[] localPoint = window.rootPointToLocal(rootX, rootY);
+        client.clearMotionHint();
 
         try (XStreamLock lock = outputStream.lock()) {
             outputStream.writeByte(RESPONSE_CODE_SUCCESS);
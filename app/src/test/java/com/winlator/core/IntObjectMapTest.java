@@ -0,0 +1,117 @@
+package com.winlator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+public class IntObjectMapTest {
+    private static void assertSameContents(HashMap<Integer, String> expected, IntObjectMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        HashSet<Integer> seenKeys = new HashSet<>();
+        for (int i = 0; i < map.size(); i++) {
+            int key = map.keyAt(i);
+            assertTrue(seenKeys.add(key));
+            assertEquals(expected.get(key), map.valueAt(i));
+        }
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void putGetAndReplace() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+
+        map.put(1, "a");
+        map.put(-5, "b");
+        map.put(0, "c");
+        map.put(1, "d");
+        assertEquals(3, map.size());
+        assertEquals("d", map.get(1));
+        assertEquals("b", map.get(-5));
+        assertEquals("c", map.get(0));
+        assertFalse(map.containsKey(2));
+    }
+
+    @Test
+    public void growKeepsEntries() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int i = 0; i < 5000; i++) map.put(i << 12, "v" + i);
+        assertEquals(5000, map.size());
+        for (int i = 0; i < 5000; i++) assertEquals("v" + i, map.get(i << 12));
+    }
+
+    @Test
+    public void removeKeepsProbeChainsReachable() {
+        IntObjectMap<String> map = new IntObjectMap<>(8);
+        HashMap<Integer, String> expected = new HashMap<>();
+        for (int i = 0; i < 8; i++) {
+            map.put(i * 16, "v" + i);
+            expected.put(i * 16, "v" + i);
+        }
+
+        for (int i = 0; i < 8; i += 2) {
+            assertEquals("v" + i, map.remove(i * 16));
+            expected.remove(i * 16);
+            assertSameContents(expected, map);
+        }
+        assertNull(map.remove(0));
+        assertNull(map.remove(12345));
+        assertSameContents(expected, map);
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        IntObjectMap<String> map = new IntObjectMap<>();
+        HashMap<Integer, String> expected = new HashMap<>();
+
+        for (int i = 0; i < 200000; i++) {
+            int key = 0x200000 + random.nextInt(4096);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else {
+                String value = "v" + i;
+                expected.put(key, value);
+                map.put(key, value);
+            }
+            if (i % 10000 == 0) assertSameContents(expected, map);
+        }
+        assertSameContents(expected, map);
+    }
+
+    @Test
+    public void removeWhileIteratingBackwards() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int i = 0; i < 100; i++) map.put(i, "v" + i);
+        for (int i = map.size()-1; i >= 0; i--) {
+            if (map.keyAt(i) % 3 == 0) map.remove(map.keyAt(i));
+        }
+        assertEquals(66, map.size());
+        for (int i = 0; i < 100; i++) assertEquals(i % 3 != 0, map.containsKey(i));
+    }
+
+    @Test
+    public void clear() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int i = 0; i < 100; i++) map.put(i, "v" + i);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+        map.put(5, "x");
+        assertEquals("x", map.get(5));
+        assertEquals(1, map.size());
+    }
+}
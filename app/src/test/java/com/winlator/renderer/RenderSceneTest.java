@@ -0,0 +1,126 @@
+package com.winlator.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.winlator.xserver.Window;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class RenderSceneTest {
+    private int nextId = 1;
+
+    private Window createWindow(Window parent, int x, int y) {
+        Window window = new Window(nextId++, null, x, y, 100, 100, null, null);
+        if (parent != null) parent.addChild(window);
+        return window;
+    }
+
+    private static boolean isViewable(Window window) {
+        for (; window != null; window = window.getParent()) {
+            if (!window.attributes.isMapped()) return false;
+        }
+        return true;
+    }
+
+    private static void collect(List<RenderableWindow> renderableWindows, Window root, Window window, int x, int y) {
+        if (!window.attributes.isMapped()) return;
+        if (window != root) renderableWindows.add(new RenderableWindow(window, x, y));
+        for (Window child : window.getChildren()) collect(renderableWindows, root, child, child.getX() + x, child.getY() + y);
+    }
+
+    private static RenderScene updateSubtree(RenderScene scene, Window root, Window window) {
+        ArrayList<RenderableWindow> subtreeWindows = new ArrayList<>();
+        if (isViewable(window)) collect(subtreeWindows, root, window, window.getRootX(), window.getRootY());
+        return scene.replaceSubtree(window, subtreeWindows, scene.version + 1);
+    }
+
+    private static void assertSameScene(Window root, RenderScene scene) {
+        ArrayList<RenderableWindow> expected = new ArrayList<>();
+        collect(expected, root, root, root.getX(), root.getY());
+        assertEquals(expected.size(), scene.windows.length);
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).window, scene.windows[i].window);
+            assertEquals(expected.get(i).rootX, scene.windows[i].rootX);
+            assertEquals(expected.get(i).rootY, scene.windows[i].rootY);
+        }
+    }
+
+    @Test
+    public void mapInsertsAfterLowerSiblingSubtree() {
+        Window root = createWindow(null, 0, 0);
+        root.attributes.setMapped(true);
+        Window a = createWindow(root, 0, 0);
+        Window a1 = createWindow(a, 5, 5);
+        Window b = createWindow(root, 10, 10);
+        Window c = createWindow(root, 20, 20);
+        RenderScene scene = RenderScene.EMPTY;
+
+        for (Window window : new Window[]{a, a1, c}) {
+            window.attributes.setMapped(true);
+            scene = updateSubtree(scene, root, window);
+        }
+        assertSameScene(root, scene);
+
+        b.attributes.setMapped(true);
+        scene = updateSubtree(scene, root, b);
+        assertSameScene(root, scene);
+        assertSame(a1, scene.windows[1].window);
+        assertSame(b, scene.windows[2].window);
+
+        a.attributes.setMapped(false);
+        scene = updateSubtree(scene, root, a);
+        assertSameScene(root, scene);
+        assertEquals(2, scene.windows.length);
+    }
+
+    @Test
+    public void randomOperationsMatchFullRebuild() {
+        Random random = new Random(7);
+        for (int tree = 0; tree < 300; tree++) {
+            Window root = createWindow(null, 0, 0);
+            root.attributes.setMapped(true);
+            ArrayList<Window> windows = new ArrayList<>();
+            windows.add(root);
+            RenderScene scene = RenderScene.EMPTY;
+
+            for (int step = 0; step < 200; step++) {
+                Window window = windows.get(random.nextInt(windows.size()));
+                switch (random.nextInt(5)) {
+                    case 0:
+                        windows.add(createWindow(window, random.nextInt(50), random.nextInt(50)));
+                        break;
+                    case 1:
+                        if (window == root) break;
+                        window.attributes.setMapped(!window.attributes.isMapped());
+                        scene = updateSubtree(scene, root, window);
+                        break;
+                    case 2:
+                    case 3: {
+                        Window parent = window.getParent();
+                        if (parent == null) break;
+                        List<Window> siblings = parent.getChildren();
+                        Window sibling = siblings.get(random.nextInt(siblings.size()));
+                        if (random.nextBoolean()) {
+                            parent.moveChildAbove(window, sibling);
+                        }
+                        else parent.moveChildBelow(window, sibling);
+                        if (window.attributes.isMapped()) scene = updateSubtree(scene, root, window);
+                        break;
+                    }
+                    case 4:
+                        if (window == root) break;
+                        window.setX((short)random.nextInt(50));
+                        window.setY((short)random.nextInt(50));
+                        if (window.attributes.isMapped()) scene = updateSubtree(scene, root, window);
+                        break;
+                }
+                assertSameScene(root, scene);
+            }
+        }
+    }
+}
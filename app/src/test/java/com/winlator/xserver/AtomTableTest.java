@@ -0,0 +1,82 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+public class AtomTableTest {
+    @Test
+    public void predefinedAtoms() {
+        AtomTable atomTable = new AtomTable();
+        assertEquals(Atom.WM_CLASS, atomTable.getId("WM_CLASS"));
+        assertEquals(Atom.STRING, atomTable.internAtom("STRING"));
+        assertEquals("WM_NAME", atomTable.getName(Atom.WM_NAME));
+        assertNull(atomTable.getName(0));
+        assertNull(atomTable.getName(atomTable.size()));
+        assertEquals(-1, atomTable.getId("_NET_WM_NAME"));
+    }
+
+    @Test
+    public void internIsIdempotent() {
+        AtomTable atomTable = new AtomTable();
+        int firstId = atomTable.size();
+        for (int i = 0; i < 1000; i++) assertEquals(firstId + i, atomTable.internAtom("ATOM_" + i));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(firstId + i, atomTable.internAtom("ATOM_" + i));
+            assertEquals("ATOM_" + i, atomTable.getName(firstId + i));
+        }
+        assertEquals(firstId + 1000, atomTable.size());
+    }
+
+    @Test
+    public void internAtomBurst() throws Exception {
+        final int threadCount = 8;
+        final int atomCount = 2000;
+        final int passes = 50;
+        AtomTable atomTable = new AtomTable();
+        String[] names = new String[atomCount];
+        for (int i = 0; i < atomCount; i++) names[i] = "_WINE_ATOM_" + i;
+
+        CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        int[][] results = new int[threadCount][atomCount];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int[] ids = results[t];
+            final int offset = t * (atomCount / threadCount);
+            threads.add(new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int pass = 0; pass < passes; pass++) {
+                        for (int i = 0; i < atomCount; i++) {
+                            int index = (i + offset) % atomCount;
+                            int id = atomTable.internAtom(names[index]);
+                            if (atomTable.getName(id) != names[index]) throw new AssertionError(names[index]);
+                            ids[index] = id;
+                        }
+                    }
+                }
+                catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(0, errors.size());
+        assertEquals(Atom.PREDEFINED.length + atomCount, atomTable.size());
+        for (int t = 1; t < threadCount; t++) {
+            for (int i = 0; i < atomCount; i++) assertEquals(results[0][i], results[t][i]);
+        }
+        for (int i = 0; i < atomCount; i++) assertTrue(atomTable.isValid(results[0][i]));
+    }
+}
@@ -0,0 +1,90 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.winlator.xconnector.XOutputStream;
+import com.winlator.xconnector.XStreamLock;
+import com.winlator.xserver.errors.BadWindow;
+import com.winlator.xserver.errors.XRequestError;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+public class RequestAllocationTest {
+    private static final int ITERATIONS = 100000;
+    private static final long MAX_ALLOCATED_BYTES = 4096;
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+        Assume.assumeTrue(sunThreadMXBean.isThreadAllocatedMemorySupported());
+        sunThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+        return sunThreadMXBean;
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private static long measureAllocatedBytes(Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < ITERATIONS; i++) operation.run();
+        long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) operation.run();
+        return threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+    }
+
+    private static void writeReply(XOutputStream outputStream) throws IOException {
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeByte((byte)1);
+            outputStream.writeByte((byte)0);
+            outputStream.writeShort((short)1);
+            outputStream.writeInt(0);
+            outputStream.writeInt(0x200001);
+            outputStream.writePad(20);
+        }
+    }
+
+    @Test
+    public void outputStreamLockIsReused() throws IOException {
+        XOutputStream outputStream = new XOutputStream(64);
+        outputStream.setOnDeferFlushListener((stream) -> true);
+        XStreamLock lock1 = outputStream.lock();
+        lock1.close();
+        XStreamLock lock2 = outputStream.lock();
+        lock2.close();
+        assertSame(lock1, lock2);
+    }
+
+    @Test
+    public void replyPathDoesNotAllocate() throws Exception {
+        XOutputStream outputStream = new XOutputStream(64);
+        outputStream.setOnDeferFlushListener((stream) -> true);
+        long allocatedBytes = measureAllocatedBytes(() -> {
+            writeReply(outputStream);
+            outputStream.buffer.clear();
+        });
+        assertTrue("allocated "+allocatedBytes+" bytes", allocatedBytes < MAX_ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void resourceIdBasesDoNotAllocate() throws Exception {
+        ResourceIDs resourceIDs = new ResourceIDs(128);
+        long allocatedBytes = measureAllocatedBytes(() -> resourceIDs.free(resourceIDs.get()));
+        assertTrue("allocated "+allocatedBytes+" bytes", allocatedBytes < MAX_ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void requestErrorsAreStackless() {
+        XRequestError error = new BadWindow(0x200001);
+        assertEquals(0, error.getStackTrace().length);
+        assertEquals(0x200001, error.getData());
+    }
+}
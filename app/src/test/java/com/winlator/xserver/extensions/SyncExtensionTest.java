@@ -0,0 +1,169 @@
+package com.winlator.xserver.extensions;
+
+import static org.junit.Assert.assertEquals;
+
+import com.winlator.xconnector.Client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SyncExtensionTest {
+    private static class FakeClient extends Client {
+        private final AtomicInteger suspendCount = new AtomicInteger();
+        private final AtomicInteger resumeCount = new AtomicInteger();
+
+        private FakeClient() {
+            super(null, null);
+        }
+
+        @Override
+        public boolean suspend() {
+            suspendCount.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void resume() {
+            resumeCount.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void awaitOnTriggeredFenceDoesNotSuspend() throws Exception {
+        SyncExtension extension = new SyncExtension();
+        FakeClient client = new FakeClient();
+        extension.createFence(1, true);
+        extension.awaitFence(client, new int[]{1});
+        assertEquals(0, client.suspendCount.get());
+        assertEquals(0, extension.getWaiterCount());
+    }
+
+    @Test
+    public void triggerResumesEveryWaiterOnce() throws Exception {
+        SyncExtension extension = new SyncExtension();
+        FakeClient client1 = new FakeClient();
+        FakeClient client2 = new FakeClient();
+        extension.createFence(1, false);
+        extension.createFence(2, false);
+        extension.awaitFence(client1, new int[]{1, 2});
+        extension.awaitFence(client2, new int[]{2});
+        assertEquals(2, extension.getWaiterCount());
+
+        extension.triggerFence(1);
+        assertEquals(1, client1.resumeCount.get());
+        assertEquals(0, client2.resumeCount.get());
+
+        extension.setTriggered(2);
+        assertEquals(1, client1.resumeCount.get());
+        assertEquals(1, client2.resumeCount.get());
+        assertEquals(0, extension.getWaiterCount());
+    }
+
+    @Test
+    public void destroyResumesWaiters() throws Exception {
+        SyncExtension extension = new SyncExtension();
+        FakeClient client = new FakeClient();
+        extension.createFence(1, false);
+        extension.awaitFence(client, new int[]{1});
+        extension.destroyFence(1);
+        assertEquals(1, client.resumeCount.get());
+        assertEquals(0, extension.getWaiterCount());
+    }
+
+    @Test
+    public void disconnectedClientIsNotRetained() throws Exception {
+        SyncExtension extension = new SyncExtension();
+        FakeClient client = new FakeClient();
+        FakeClient other = new FakeClient();
+        extension.createFence(1, false);
+        extension.awaitFence(client, new int[]{1});
+        extension.awaitFence(other, new int[]{1});
+
+        extension.removeWaiters(client);
+        assertEquals(1, extension.getWaiterCount());
+
+        extension.triggerFence(1);
+        assertEquals(0, client.resumeCount.get());
+        assertEquals(1, other.resumeCount.get());
+        assertEquals(0, extension.getWaiterCount());
+    }
+
+    @Test
+    public void concurrentTriggerAndAwait() throws Exception {
+        final int rounds = 200;
+        final int fenceCount = 16;
+        final int awaitThreads = 4;
+        final int triggerThreads = 4;
+        final int awaitsPerThread = 32;
+        SyncExtension extension = new SyncExtension();
+        ConcurrentLinkedQueue<FakeClient> clients = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CyclicBarrier startBarrier = new CyclicBarrier(awaitThreads + triggerThreads + 1);
+        CyclicBarrier endBarrier = new CyclicBarrier(awaitThreads + triggerThreads + 1);
+        AtomicInteger round = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < awaitThreads; t++) {
+            final Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        startBarrier.await();
+                        int firstId = round.get() * fenceCount + 1;
+                        for (int i = 0; i < awaitsPerThread; i++) {
+                            FakeClient client = new FakeClient();
+                            clients.add(client);
+                            extension.awaitFence(client, new int[]{firstId + random.nextInt(fenceCount), firstId + random.nextInt(fenceCount)});
+                        }
+                        endBarrier.await();
+                    }
+                }
+                catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+
+        for (int t = 0; t < triggerThreads; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        startBarrier.await();
+                        int firstId = round.get() * fenceCount + 1;
+                        for (int i = offset; i < fenceCount; i += triggerThreads) {
+                            if ((i & 1) == 0) {
+                                extension.triggerFence(firstId + i);
+                            }
+                            else extension.setTriggered(firstId + i);
+                        }
+                        endBarrier.await();
+                    }
+                }
+                catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (int r = 0; r < rounds; r++) {
+            round.set(r);
+            for (int i = 1; i <= fenceCount; i++) extension.createFence(r * fenceCount + i, false);
+            startBarrier.await();
+            endBarrier.await();
+            assertEquals(0, extension.getWaiterCount());
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(0, errors.size());
+        assertEquals(rounds * awaitThreads * awaitsPerThread, clients.size());
+        for (FakeClient client : clients) assertEquals(client.suspendCount.get(), client.resumeCount.get());
+    }
+}